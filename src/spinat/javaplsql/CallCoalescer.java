@@ -0,0 +1,309 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Merges concurrent calls of the same procedure into one batch. The calls of
+ * a procedure which arrive within the window, or until maxBatchSize calls
+ * are collected, are sent with {@link ProcedureCaller#callBatch} in one round
+ * trip. Each caller gets its own result or exception. A name is resolved on
+ * its first call, like {@link ProcedureCaller#prepare}, names which resolve
+ * to the same procedure share the batches.
+ * <p>
+ * All calls go through the ProcedureCaller given to the constructor, one
+ * batch after the other, like the calls of its callAsync methods.
+ */
+public final class CallCoalescer {
+
+    private final ProcedureCaller caller;
+    private volatile long windowMicros = 1000;
+    private volatile int maxBatchSize = 100;
+
+    // guards open and the statistics, see ProcedureCaller.callLock
+    private final ReentrantLock lock = new ReentrantLock();
+    // signalled when a batch is full
+    private final Condition full = lock.newCondition();
+    // the batches which still accept calls, by procedure, names which
+    // resolve to the same procedure share the batch
+    private final HashMap<ProcedureCaller.Procedure, Batch> open = new HashMap<>();
+    // the procedures by name, resolved once like prepare does, an entry
+    // is used until ProcedureCaller.clearMetadataCache is called
+    private final ConcurrentHashMap<String, Resolved> procedures = new ConcurrentHashMap<>();
+    // histogram[i] is the number of batches with 2^i to 2^(i+1)-1 calls
+    private final long[] histogram = new long[31];
+    private long calls = 0;
+    private long batches = 0;
+
+    private static final class Resolved {
+
+        final ProcedureCaller.Procedure proc;
+        final int generation;
+
+        Resolved(ProcedureCaller.Procedure proc, int generation) {
+            this.proc = proc;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Batch {
+
+        final ArrayList<Map<String, Object>> args = new ArrayList<>();
+        final ArrayList<CompletableFuture<Map<String, Object>>> results = new ArrayList<>();
+        boolean closed = false;
+    }
+
+    public CallCoalescer(ProcedureCaller caller) {
+        this.caller = caller;
+    }
+
+    /**
+     * @return the time in microseconds a batch waits for more calls
+     */
+    public long getWindowMicros() {
+        return windowMicros;
+    }
+
+    /**
+     * Set the time a batch waits for more calls after its first call.
+     *
+     * @param windowMicros the time in microseconds, 0 sends every call
+     * without waiting
+     */
+    public void setWindowMicros(long windowMicros) {
+        if (windowMicros < 0) {
+            throw new IllegalArgumentException("the window must not be negative");
+        }
+        this.windowMicros = windowMicros;
+    }
+
+    /**
+     * @return the number of calls after which a batch is sent without
+     * waiting for the end of the window
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("the batch size must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return the number of calls sent so far
+     */
+    public long getCalls() {
+        lock.lock();
+        try {
+            return calls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of batches sent so far, getCalls()/getBatches() is
+     * the average batch size
+     */
+    public long getBatches() {
+        lock.lock();
+        try {
+            return batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The sizes of the batches sent so far: element i is the number of
+     * batches with 2^i to 2^(i+1)-1 calls.
+     *
+     * @return a copy of the histogram
+     */
+    public long[] getBatchSizeHistogram() {
+        lock.lock();
+        try {
+            return histogram.clone();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Call a procedure with named arguments, like
+     * {@link ProcedureCaller#call(String, Map)}. The call may be sent
+     * together with concurrent calls of the same procedure.
+     *
+     * @param name the name of the procedure
+     * @param args the arguments
+     * @return the return value and the OUT arguments
+     * @throws SQLException
+     */
+    public Map<String, Object> call(String name, Map<String, Object> args) throws SQLException {
+        ProcedureCaller.Procedure proc = procedure(name);
+        CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        Batch b;
+        boolean leader;
+        lock.lock();
+        try {
+            b = open.get(proc);
+            leader = b == null;
+            if (leader) {
+                b = new Batch();
+                open.put(proc, b);
+            }
+            b.args.add(args);
+            b.results.add(result);
+            if (b.args.size() >= maxBatchSize) {
+                close(proc, b);
+                full.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // the first call of a batch waits for the others and sends the batch
+        if (leader) {
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(windowMicros);
+            lock.lock();
+            try {
+                while (!b.closed) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    try {
+                        full.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                close(proc, b);
+                int size = b.args.size();
+                calls += size;
+                batches++;
+                histogram[31 - Integer.numberOfLeadingZeros(size)]++;
+            } finally {
+                lock.unlock();
+            }
+            send(proc, b);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof SQLException) {
+                throw (SQLException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw e;
+        }
+    }
+
+    // the name is resolved over the connection of the caller, this must
+    // not happen while a batch is sent
+    private ProcedureCaller.Procedure procedure(String name) throws SQLException {
+        int g = ProcedureCaller.metadataGeneration();
+        Resolved r = procedures.get(name);
+        if (r != null && r.generation == g) {
+            return r.proc;
+        }
+        ProcedureCaller.Procedure proc;
+        caller.callLock.lock();
+        try {
+            proc = caller.singleProcedure(name);
+        } finally {
+            caller.callLock.unlock();
+        }
+        procedures.put(name, new Resolved(proc, g));
+        return proc;
+    }
+
+    private void close(ProcedureCaller.Procedure proc, Batch b) {
+        if (!b.closed) {
+            b.closed = true;
+            open.remove(proc);
+        }
+    }
+
+    private void send(ProcedureCaller.Procedure proc, Batch b) {
+        caller.callLock.lock();
+        try {
+            if (b.args.size() == 1) {
+                sendSingly(proc, b);
+                return;
+            }
+            ArrayList<ProcedureCaller.ArgArrays> chunks;
+            try {
+                // one chunk, the batch is sent in one round trip
+                chunks = caller.batchArgs(proc, b.args, b.args.size());
+            } catch (RuntimeException e) {
+                // the arguments of one call could not be converted or the
+                // procedure can not be batched, nothing was sent:
+                // send the calls one by one, each gets its own error
+                sendSingly(proc, b);
+                return;
+            }
+            List<ProcedureCaller.BatchResult> res = caller.sendBatch(proc, chunks, b.args.size(), b.args.size());
+            for (int i = 0; i < res.size(); i++) {
+                ProcedureCaller.BatchResult r = res.get(i);
+                if (r.isOk()) {
+                    b.results.get(i).complete(r.getValues());
+                } else {
+                    b.results.get(i).completeExceptionally(r.getException());
+                }
+            }
+        } catch (Throwable t) {
+            // the batch may have been executed, the calls are not repeated
+            for (CompletableFuture<Map<String, Object>> f : b.results) {
+                f.completeExceptionally(t);
+            }
+        } finally {
+            caller.callLock.unlock();
+        }
+    }
+
+    private void sendSingly(ProcedureCaller.Procedure proc, Batch b) {
+        for (int i = 0; i < b.args.size(); i++) {
+            try {
+                b.results.get(i).complete(caller.call(proc, b.args.get(i)));
+            } catch (Throwable t) {
+                b.results.get(i).completeExceptionally(t);
+            }
+        }
+    }
+}
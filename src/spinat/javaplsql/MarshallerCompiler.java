@@ -0,0 +1,190 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+// compiles the source of a generated marshaller in memory and defines the
+// class in the package of ProcedureCaller, so that the generated code can
+// use the package private parts of ProcedureCaller.
+// A marshaller class must be unloadable, it belongs to a Procedure which
+// is dropped from the metadata cache. A class defined by an own class
+// loader is not in the runtime package of ProcedureCaller and may not use
+// its package private parts. So the class is defined as a hidden class of
+// the package (MethodHandles.Lookup.defineHiddenClass, Java 15 and later,
+// called by reflection). On older JVMs and without a Java compiler an
+// exception is thrown and the caller falls back to the normal conversion.
+// javac reads the classes of this package through the class loader of
+// ProcedureCaller, the class path of the JVM does not contain them in an
+// application server or with a launcher for nested jars.
+final class MarshallerCompiler {
+
+    private MarshallerCompiler() {
+    }
+
+    private static final Method defineHiddenClass = hiddenClassMethod();
+    private static final Object noOptions = defineHiddenClass == null ? null
+            : Array.newInstance(defineHiddenClass.getParameterTypes()[2].getComponentType(), 0);
+
+    private static Method hiddenClassMethod() {
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            return MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, Array.newInstance(option, 0).getClass());
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static boolean hiddenClassesAvailable() {
+        return defineHiddenClass != null;
+    }
+
+    static Class<?> compile(String className, String source) throws Exception {
+        if (defineHiddenClass == null) {
+            throw new UnsupportedOperationException("generating marshallers needs hidden classes, i.e. Java 15 or later");
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new UnsupportedOperationException("no Java compiler available, generating marshallers needs a JDK");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager std = compiler.getStandardFileManager(diagnostics, null, null);
+        final ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        JavaFileManager fm = new ForwardingJavaFileManager<StandardJavaFileManager>(std) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location,
+                    String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classBytes;
+                    }
+                };
+            }
+
+            @Override
+            public Iterable<JavaFileObject> list(JavaFileManager.Location location, String packageName,
+                    Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+                if (location == StandardLocation.CLASS_PATH && kinds.contains(JavaFileObject.Kind.CLASS)
+                        && packageName.equals(ProcedureCaller.class.getPackage().getName())) {
+                    return packageClasses();
+                }
+                return super.list(location, packageName, kinds, recurse);
+            }
+
+            @Override
+            public String inferBinaryName(JavaFileManager.Location location, JavaFileObject file) {
+                if (file instanceof LoaderClassFile) {
+                    return ((LoaderClassFile) file).binaryName;
+                }
+                return super.inferBinaryName(location, file);
+            }
+        };
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        JavaFileObject src = new SimpleJavaFileObject(URI.create("mem:///" + simpleName + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = new ArrayList<>();
+        options.add("-g:none");
+        options.add("-nowarn");
+        options.add("-proc:none");
+        try {
+            Boolean ok = compiler.getTask(null, fm, diagnostics, options, null,
+                    Collections.singletonList(src)).call();
+            if (!ok) {
+                throw new RuntimeException("could not compile marshaller: " + diagnostics.getDiagnostics());
+            }
+        } finally {
+            fm.close();
+        }
+        try {
+            MethodHandles.Lookup l = (MethodHandles.Lookup) defineHiddenClass.invoke(MethodHandles.lookup(),
+                    classBytes.toByteArray(), true, noOptions);
+            return l.lookupClass();
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // a class file read from the class loader of ProcedureCaller
+    private static final class LoaderClassFile extends SimpleJavaFileObject {
+
+        final String binaryName;
+
+        LoaderClassFile(Class<?> c) {
+            super(URI.create("mem:///" + c.getName().replace('.', '/') + ".class"), JavaFileObject.Kind.CLASS);
+            this.binaryName = c.getName();
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            String resource = binaryName.replace('.', '/') + ".class";
+            InputStream in = ProcedureCaller.class.getClassLoader().getResourceAsStream(resource);
+            if (in == null) {
+                throw new IOException("class file not found: " + resource);
+            }
+            return in;
+        }
+    }
+
+    // the classes the generated code may use: ProcedureCaller, RowMap and
+    // their member classes
+    private static List<JavaFileObject> packageClasses() {
+        ArrayList<JavaFileObject> res = new ArrayList<>();
+        addClasses(res, ProcedureCaller.class);
+        addClasses(res, RowMap.class);
+        return res;
+    }
+
+    private static void addClasses(List<JavaFileObject> res, Class<?> c) {
+        res.add(new LoaderClassFile(c));
+        for (Class<?> m : c.getDeclaredClasses()) {
+            addClasses(res, m);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests a stub class from {@link StubProcessor}. The class
+ * spinat.javaplsql.<i>className</i> gets a public static method for each
+ * procedure, e.g. for P1.P3:
+ * <pre>
+ * public static Map&lt;String, Object&gt; p3(ProcedureCaller pc, Map&lt;String, Object&gt; args)
+ * </pre>
+ * The method works like {@link ProcedureCaller#call(String, Map)} but
+ * uses the description of the procedure in the snapshot, it does not
+ * access the data dictionary. The ProcedureCaller must have the settings
+ * of the snapshot (down casing, dates as strings and table names).
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface PlsqlStubs {
+
+    /**
+     * @return the snapshot file written by ProcedureCaller.writeSnapshot,
+     * relative to the option javaplsql.snapshotDir or the working directory
+     * of the compiler
+     */
+    String snapshot();
+
+    /**
+     * @return the simple name of the generated class
+     */
+    String className();
+
+    /**
+     * @return the procedures, as owner.package.procedure, package.procedure
+     * or procedure, an overloaded procedure is followed by #overload
+     */
+    String[] procedures();
+}
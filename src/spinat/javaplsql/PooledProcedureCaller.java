@@ -0,0 +1,176 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import oracle.jdbc.OracleConnection;
+
+/**
+ * A thread safe caller which leases a connection from a DataSource for each
+ * call. The procedure metadata, the generated blocks and marshallers are
+ * shared by all ProcedureCallers of the JVM anyway; the pooled caller also
+ * shares the session context and the resolved names of the array types
+ * between the calls, so a call on a fresh connection needs no extra round
+ * trip. All connections of the DataSource must have the same user and
+ * current_schema.
+ * <p>
+ * Each call runs on its own connection, whether it is committed depends on
+ * the autocommit setting of the pool. Several calls in one transaction are
+ * done with {@link #execute}.
+ */
+public final class PooledProcedureCaller {
+
+    private final DataSource dataSource;
+    // holds the settings and what was found out about the sessions,
+    // it has no connection and is never used to call
+    private final ProcedureCaller template;
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    /**
+     * Work done with one leased connection.
+     *
+     * @param <T> the result
+     */
+    public interface Work<T> {
+
+        T apply(ProcedureCaller caller) throws SQLException;
+    }
+
+    public PooledProcedureCaller(DataSource dataSource) {
+        this(dataSource, false, false);
+    }
+
+    public PooledProcedureCaller(DataSource dataSource, boolean downCasing, boolean exportDateAsString) {
+        this.dataSource = dataSource;
+        this.template = new ProcedureCaller(null, downCasing, exportDateAsString);
+    }
+
+    /**
+     * The settings used for the calls: the setters of the returned
+     * ProcedureCaller (table names, generateMarshallers, lazyResults, ...)
+     * change the settings of all later calls. Change them before the first
+     * call, the returned ProcedureCaller can not be used to call.
+     *
+     * @return the settings
+     */
+    public ProcedureCaller settings() {
+        return template;
+    }
+
+    /**
+     * @return the estimated number of round trips of all calls, see
+     * ProcedureCaller.getRoundTrips
+     */
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * Lease a connection and do work with a ProcedureCaller for it. The
+     * connection is returned to the pool when work is done, results which
+     * keep the connection, like the one of callStreaming, must be closed
+     * within work.
+     *
+     * @param <T> the result of work
+     * @param work the work
+     * @return the result of work
+     * @throws SQLException
+     */
+    public <T> T execute(Work<T> work) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            ProcedureCaller pc = new ProcedureCaller(con.unwrap(OracleConnection.class), template);
+            try {
+                return work.apply(pc);
+            } finally {
+                roundTrips.addAndGet(pc.getRoundTrips());
+                pc.shareSessionState(template);
+            }
+        }
+    }
+
+    public Map<String, Object> call(String name, Map<String, Object> args) throws SQLException {
+        return execute(pc -> pc.call(name, args));
+    }
+
+    public Map<String, Object> call(String name, int overload, Map<String, Object> args) throws SQLException {
+        return execute(pc -> pc.call(name, overload, args));
+    }
+
+    public Object callPositional(String name, Object... args) throws SQLException {
+        return execute(pc -> pc.callPositional(name, args));
+    }
+
+    public Object callPositionalO(String name, int overload, Object... args) throws SQLException {
+        return execute(pc -> pc.callPositionalO(name, overload, args));
+    }
+
+    public <T> T call(String name, Object args, Class<T> resultClass) throws SQLException {
+        return execute(pc -> pc.call(name, args, resultClass));
+    }
+
+    public <T> T callFunction(String name, Object args, Class<T> returnClass) throws SQLException {
+        return execute(pc -> pc.callFunction(name, args, returnClass));
+    }
+
+    /**
+     * Call the procedure for each Map of arguments with
+     * {@link ProcedureCaller#callBatch}, all on one connection.
+     *
+     * @param name the name of the procedure
+     * @param args the arguments of the calls
+     * @return the results of the calls
+     * @throws SQLException
+     */
+    public List<ProcedureCaller.BatchResult> callBatch(String name, List<Map<String, Object>> args)
+            throws SQLException {
+        return execute(pc -> pc.callBatch(name, args));
+    }
+
+    /**
+     * Call a procedure with named arguments on a new virtual thread (on Java
+     * 21 and later, else on a thread of a pool). The number of calls running
+     * at the same time is bounded by the pool, the others wait for a
+     * connection.
+     *
+     * @param name the name of the procedure
+     * @param args the arguments
+     * @return the future result
+     */
+    public CompletableFuture<Map<String, Object>> callAsync(String name, Map<String, Object> args) {
+        return callAsync(name, args, ProcedureCaller.defaultExecutor());
+    }
+
+    public CompletableFuture<Map<String, Object>> callAsync(String name, Map<String, Object> args,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call(name, args);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
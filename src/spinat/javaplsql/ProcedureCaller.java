@@ -17,6 +17,18 @@
  */
 package spinat.javaplsql;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.WildcardType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.CallableStatement;
@@ -26,16 +38,54 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import oracle.jdbc.OracleCallableStatement;
 import oracle.jdbc.OracleConnection;
 import oracle.jdbc.OracleResultSet;
@@ -73,6 +123,40 @@ public final class ProcedureCaller {
         return sdf.format(d);
     }
 
+    // the key of an index by binary_integer table
+    static int indexByIntegerKey(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key in integer array is null");
+        }
+        if (key instanceof String) {
+            return Integer.parseInt((String) key);
+        } else if (key instanceof Integer) {
+            return (Integer) key;
+        } else {
+            throw new RuntimeException("expecting an integer as key");
+        }
+    }
+
+    // a Java string literal for s
+    static String javaString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 32) {
+                // octal, the compiler would read a unicode escape of a
+                // line break as the end of the line
+                sb.append(String.format("\\%03o", (int) c));
+            } else if (c > 126) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
     public static class ConversionException extends RuntimeException {
 
         public ConversionException(String bla) {
@@ -104,10 +188,11 @@ public final class ProcedureCaller {
     // unfortunately the JDBC retrival of Array Descriptors does not care about
     // set current_schema = 
     // therefore we resolve the name and store schema.name in these fields
-    private String effectiveNumberTableName = null;
-    private String effectiveVarchar2TableName = null;
-    private String effectiveDateTableName = null;
-    private String effectiveRawTableName = null;
+    // volatile, a PooledProcedureCaller shares them between threads
+    private volatile String effectiveNumberTableName = null;
+    private volatile String effectiveVarchar2TableName = null;
+    private volatile String effectiveDateTableName = null;
+    private volatile String effectiveRawTableName = null;
 
     public ProcedureCaller(OracleConnection connection) {
         this.connection = connection;
@@ -121,6 +206,54 @@ public final class ProcedureCaller {
         this.exportDateAsString = exportDateAsString;
     }
 
+    // a caller for a leased connection of a PooledProcedureCaller with the
+    // settings of template. The session context and the resolved names of
+    // the array types are taken from template too, all connections of a
+    // pool are expected to have the same user and current_schema.
+    ProcedureCaller(OracleConnection connection, ProcedureCaller template) {
+        this.connection = connection;
+        this.downCasing = template.downCasing;
+        this.exportDateAsString = template.exportDateAsString;
+        this.numberTableName = template.numberTableName;
+        this.varchar2TableName = template.varchar2TableName;
+        this.dateTableName = template.dateTableName;
+        this.rawTableName = template.rawTableName;
+        // shareSessionState writes currentSchema and effectiveRawTableName
+        // last, read them first
+        this.currentSchema = template.currentSchema;
+        this.sessionUser = template.sessionUser;
+        this.effectiveRawTableName = template.effectiveRawTableName;
+        this.effectiveNumberTableName = template.effectiveNumberTableName;
+        this.effectiveVarchar2TableName = template.effectiveVarchar2TableName;
+        this.effectiveDateTableName = template.effectiveDateTableName;
+        this.reuseStatements = template.reuseStatements;
+        this.cursorFetchMemory = template.cursorFetchMemory;
+        this.cursorFetchSize = template.cursorFetchSize;
+        this.generateMarshallers = template.generateMarshallers;
+        this.lazyResults = template.lazyResults;
+        this.describeWholePackage = template.describeWholePackage;
+        this.batchSize = template.batchSize;
+    }
+
+    // hand what this caller found out about its session to template,
+    // the next callers created from template need not ask again
+    void shareSessionState(ProcedureCaller template) {
+        if (template.currentSchema == null && this.currentSchema != null) {
+            template.sessionUser = this.sessionUser;
+            template.currentSchema = this.currentSchema;
+        }
+        if (template.effectiveRawTableName == null && this.effectiveRawTableName != null
+                && template.numberTableName.equals(this.numberTableName)
+                && template.varchar2TableName.equals(this.varchar2TableName)
+                && template.dateTableName.equals(this.dateTableName)
+                && template.rawTableName.equals(this.rawTableName)) {
+            template.effectiveNumberTableName = this.effectiveNumberTableName;
+            template.effectiveVarchar2TableName = this.effectiveVarchar2TableName;
+            template.effectiveDateTableName = this.effectiveDateTableName;
+            template.effectiveRawTableName = this.effectiveRawTableName;
+        }
+    }
+
     /**
      * @return the numberTableName
      */
@@ -263,34 +396,62 @@ public final class ProcedureCaller {
         return rn.schema + "." + name;
     }
 
-    // determine the type of an index by table
+    // determine the type of index by tables
     // it is not possible to do this by looking at the data dictionary
     // so we execute a small block to determine this
-    // returns V for index by varchar2 and I for index by binary_integer
+    // for each table type there is an inner block, all types of a
+    // describe are checked in one round trip. The result is stored in
+    // index_by of the rows, V for index by varchar2 and I for index by binary_integer
     // this is a dirty trick 
-    private char isIndexByVarcharOrInt(String owner, String package_, String type) {
-        try (CallableStatement s = this.connection.prepareCall(
-                "declare a " + owner + "." + package_ + "." + type + ";\n"
-                + " x varchar2(1):='y';\n"
-                + "begin\n"
-                + "begin\n"
-                + "if a.exists('akl') then\n"
-                // there has to something here otherwise oracle will optimize
-                // to much, just the statement null; will not work!
-                + "  x:='z';\n"
-                + "end if;\n"
-                + "x:='X';\n"
-                + "exception when others then\n"
-                + " x:= null;\n"
-                + " end;\n"
-                + "?:=x;\n"
-                + "end;")) {
+    private void probeIndexByTables(ArrayDeque<ArgumentsRow> rows) throws SQLException {
+        LinkedHashMap<String, ArrayList<ArgumentsRow>> types = new LinkedHashMap<>();
+        for (ArgumentsRow r : rows) {
+            if ("PL/SQL TABLE".equals(r.data_type)) {
+                String t = r.type_owner + "." + r.type_name + "." + r.type_subname;
+                ArrayList<ArgumentsRow> l = types.get(t);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    types.put(t, l);
+                }
+                l.add(r);
+            }
+        }
+        if (types.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("declare r varchar2(32767);\n");
+        sb.append("begin\n");
+        for (String t : types.keySet()) {
+            sb.append("declare a ").append(t).append(";\n");
+            sb.append(" x varchar2(1):='y';\n");
+            sb.append("begin\n");
+            sb.append("begin\n");
+            sb.append("if a.exists('akl') then\n");
+            // there has to something here otherwise oracle will optimize
+            // to much, just the statement null; will not work!
+            sb.append("  x:='z';\n");
+            sb.append("end if;\n");
+            sb.append("x:='X';\n");
+            sb.append("exception when others then\n");
+            sb.append(" x:= null;\n");
+            sb.append(" end;\n");
+            sb.append("r := r || case when x is null then 'I' else 'V' end;\n");
+            sb.append("end;\n");
+        }
+        sb.append("?:=r;\n");
+        sb.append("end;");
+        try (CallableStatement s = this.connection.prepareCall(sb.toString())) {
             s.registerOutParameter(1, Types.VARCHAR);
             s.execute();
             String x = s.getString(1);
-            return null == x ? 'I' : 'V';
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
+            int i = 0;
+            for (ArrayList<ArgumentsRow> l : types.values()) {
+                for (ArgumentsRow r : l) {
+                    r.index_by = x.charAt(i);
+                }
+                i++;
+            }
         }
     }
 
@@ -305,6 +466,11 @@ public final class ProcedureCaller {
         // the type
         public abstract void fillArgArrays(ArgArrays a, Object o);
 
+        // this is the first pass before fillArgArrays: count the entries
+        // fillArgArrays will add for Object o, so that ArgArrays can allocate
+        // its arrays with the exact size
+        public abstract void countArgArrays(ArgArrays a, Object o);
+
         // this is the inverse process . The result data is returned from 
         // the database in three tables. Reconstruct the objects from the 
         // data in the arrays based on the type
@@ -324,109 +490,232 @@ public final class ProcedureCaller {
         // the reason for the AtomicInteger is the same as above
         public abstract void genWriteThing(StringBuilder sb, AtomicInteger counter, String source);
 
+        // generate the Java code for a generated marshaller, see 
+        // genMarshallerSource. The generated code does the same as countArgArrays,
+        // fillArgArrays and readFromResArrays but without the virtual calls.
+        // value is a local variable with the value, target a local variable
+        // of type Object which gets the result. New local variables get their
+        // name from gen.
+        public abstract void genJavaCount(StringBuilder sb, JavaGen gen, String value);
+
+        public abstract void genJavaFill(StringBuilder sb, JavaGen gen, String value);
+
+        public abstract void genJavaRead(StringBuilder sb, JavaGen gen, String target);
     }
 
     // the PL/SQL standrad types, identfied by their name DATE, NUMBER
-    private static class NamedType extends Type {
+    // the name is only looked at when the type is created, each kind of named
+    // type has its own class, so marshalling a value does no string compares
+    private static abstract class NamedType extends Type {
 
         final String name; // number, integer ...
-        final boolean exportDateAsString;
 
-        public NamedType(String name, boolean exportDateAsString) {
+        NamedType(String name) {
             this.name = name;
-            this.exportDateAsString = exportDateAsString;
+        }
+
+        static NamedType create(String name, boolean exportDateAsString) {
+            switch (name) {
+                case "NUMBER":
+                case "INTEGER":
+                case "BINARY_INTEGER":
+                    return new NumberType(name);
+                case "DATE":
+                    return new DateType(name, exportDateAsString);
+                case "PL/SQL BOOLEAN":
+                    return new BooleanType(name);
+                default:
+                    throw new RuntimeException("unsupported named type: " + name);
+            }
         }
 
         @Override
         public String plsqlName() {
-            if (this.name.equals("PL/SQL BOOLEAN")) {
-                return "boolean";
-            } else {
-                return this.name;
-            }
+            return this.name;
+        }
+    }
+
+    private static final class NumberType extends NamedType {
+
+        NumberType(String name) {
+            super(name);
         }
 
         @Override
         public void fillArgArrays(ArgArrays a, Object o) {
-            if (this.name.equals("NUMBER")
-                    || this.name.equals("INTEGER")
-                    || this.name.equals("BINARY_INTEGER")) {
-                a.addNumber((Number) o);
-            } else if (this.name.equals("PL/SQL BOOLEAN")) {
-                if (o == null) {
-                    a.addNumber(null);
-                } else {
-                    boolean b = (Boolean) o;
-                    a.addNumber(b ? 1 : 0);
-                }
+            a.addNumber((Number) o);
+        }
 
-            } else if (this.name.equals("DATE")) {
-                java.util.Date d;
-                if (o != null && o instanceof String) {
-                    d = stringToDate((String) o);
-                } else {
-                    d = (java.util.Date) o;
-                }
-                a.addDate(d);
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.decimalCount++;
+        }
+
+        @Override
+        public Object readFromResArrays(ResArrays a) {
+            return a.readBigDecimal();
+        }
+
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.decimalCount++;\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.addNumber((Number) ").append(value).append(");\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(target).append(" = r.readBigDecimal();\n");
+        }
+
+        @Override
+        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
+            genPut(sb, 'n', source);
+        }
+
+        @Override
+        public void genReadOutThing(StringBuilder sb, AtomicInteger counter, String target) {
+            sb.append(target).append(":= an(inn);inn:=inn+1;\n");
+        }
+    }
+
+    private static final class DateType extends NamedType {
+
+        final boolean exportDateAsString;
+
+        DateType(String name, boolean exportDateAsString) {
+            super(name);
+            this.exportDateAsString = exportDateAsString;
+        }
+
+        @Override
+        public void fillArgArrays(ArgArrays a, Object o) {
+            java.util.Date d;
+            if (o != null && o instanceof String) {
+                d = stringToDate((String) o);
             } else {
-                throw new RuntimeException("unsupported named type");
+                d = (java.util.Date) o;
             }
+            a.addDate(d);
+        }
+
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.dateCount++;
         }
 
         @Override
         public Object readFromResArrays(ResArrays a) {
-            if (this.name.equals("NUMBER")
-                    || this.name.equals("INTEGER")
-                    || this.name.equals("BINARY_INTEGER")) {
-                return a.readBigDecimal();
-            } else if (this.name.equals("DATE")) {
-                Date d = a.readDate();
-                if (this.exportDateAsString) {
-                    return dateToString(d);
-                } else {
-                    return d;
-                }
-            } else if (this.name.equals("PL/SQL BOOLEAN")) {
-                BigDecimal x = a.readBigDecimal();
-                if (x == null) {
-                    return null;
-                } else {
-                    return x.equals(BigDecimal.ONE);
-                }
+            Date d = a.readDate();
+            if (this.exportDateAsString) {
+                return dateToString(d);
             } else {
-                throw new RuntimeException("unsupported named type: " + this.name);
+                return d;
             }
         }
 
         @Override
-        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            if (this.name.equals("NUMBER")
-                    || this.name.equals("INTEGER")
-                    || this.name.equals("BINARY_INTEGER")) {
-                sb.append("an.extend; an(an.last):= " + source + ";\n");
-            } else if (this.name.equals("DATE")) {
-                sb.append("ad.extend; ad(ad.last):= " + source + ";\n");
-            } else if (this.name.equals("PL/SQL BOOLEAN")) {
-                sb.append("an.extend; an(an.last):= case when " + source + " then 1 when not " + source + " then 0 else null end;\n");
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.dateCount++;\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.addDate(").append(value).append(" instanceof String ? ProcedureCaller.stringToDate((String) ")
+                    .append(value).append(") : (java.util.Date) ").append(value).append(");\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            if (this.exportDateAsString) {
+                sb.append(target).append(" = ProcedureCaller.dateToString(r.readDate());\n");
             } else {
-                throw new RuntimeException("unsupported base type");
+                sb.append(target).append(" = r.readDate();\n");
             }
         }
 
+        @Override
+        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
+            genPut(sb, 'd', source);
+        }
+
         @Override
         public void genReadOutThing(StringBuilder sb, AtomicInteger counter, String target) {
-            if (this.name.equals("NUMBER")
-                    || this.name.equals("INTEGER")
-                    || this.name.equals("BINARY_INTEGER")) {
-                sb.append(target).append(":= an(inn);inn:=inn+1;\n");
-            } else if (this.name.equals("DATE")) {
-                sb.append(target).append(":= ad(ind); ind := ind+1;\n");
-            } else if (this.name.equals("PL/SQL BOOLEAN")) {
-                sb.append(target).append(":= an(inn)=1; inn := inn+1;\n");
+            sb.append(target).append(":= ad(ind); ind := ind+1;\n");
+        }
+    }
+
+    // booleans are transported as 1/0 in the number array
+    private static final class BooleanType extends NamedType {
+
+        BooleanType(String name) {
+            super(name);
+        }
+
+        @Override
+        public String plsqlName() {
+            return "boolean";
+        }
+
+        @Override
+        public void fillArgArrays(ArgArrays a, Object o) {
+            if (o == null) {
+                a.addNumber(null);
+            } else {
+                boolean b = (Boolean) o;
+                a.addNumber(b ? 1 : 0);
+            }
+        }
+
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.decimalCount++;
+        }
+
+        @Override
+        public Object readFromResArrays(ResArrays a) {
+            BigDecimal x = a.readBigDecimal();
+            if (x == null) {
+                return null;
             } else {
-                throw new RuntimeException("unsupported base type");
+                return x.equals(BigDecimal.ONE);
             }
         }
+
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.decimalCount++;\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("if (").append(value).append(" == null) {\n");
+            sb.append("a.addNumber((Number) null);\n");
+            sb.append("} else {\n");
+            sb.append("a.addNumber(((Boolean) ").append(value).append(") ? 1 : 0);\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            String x = gen.newVar();
+            sb.append("java.math.BigDecimal ").append(x).append(" = r.readBigDecimal();\n");
+            sb.append(target).append(" = ").append(x).append(" == null ? null : (Object) ")
+                    .append(x).append(".equals(java.math.BigDecimal.ONE);\n");
+        }
+
+        @Override
+        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
+            genPut(sb, 'n', "case when " + source + " then 1 when not " + source + " then 0 else null end");
+        }
+
+        @Override
+        public void genReadOutThing(StringBuilder sb, AtomicInteger counter, String target) {
+            sb.append(target).append(":= an(inn)=1; inn := inn+1;\n");
+        }
     }
 
     private static class Varchar2Type extends Type {
@@ -459,14 +748,54 @@ public final class ProcedureCaller {
             }
         }
 
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.varchar2Count++;
+        }
+
+        // the elements of a table before they are copied, see TableType.fillScalars
+        void check(Object[] values) {
+            int allowed_size = this.size == 0 ? 32767 : this.size;
+            for (Object o : values) {
+                String s = (String) o;
+                if (s != null && s.length() > allowed_size) {
+                    throw new ConversionException("string is to large, allowed are "
+                            + allowed_size + ", given length " + s.length());
+                }
+            }
+        }
+
         @Override
         public Object readFromResArrays(ResArrays a) {
             return a.readString();
         }
 
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.varchar2Count++;\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            int allowed_size = this.size == 0 ? 32767 : this.size;
+            String s = gen.newVar();
+            sb.append("String ").append(s).append(" = (String) ").append(value).append(";\n");
+            sb.append("if (").append(s).append(" != null && ").append(s).append(".length() > ")
+                    .append(allowed_size).append(") {\n");
+            sb.append("throw new ProcedureCaller.ConversionException(\"string is to large, allowed are ")
+                    .append(allowed_size).append(", given length \" + ").append(s).append(".length());\n");
+            sb.append("}\n");
+            sb.append("a.addString(").append(s).append(");\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(target).append(" = r.readString();\n");
+        }
+
         @Override
         public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("av.extend; av(av.last) := " + source + ";\n");
+            genPut(sb, 'v', source);
         }
 
         @Override
@@ -505,14 +834,54 @@ public final class ProcedureCaller {
             }
         }
 
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.rawCount++;
+        }
+
+        // the elements of a table before they are copied, see TableType.fillScalars
+        void check(Object[] values) {
+            int allowed_size = this.size == 0 ? 32767 : this.size;
+            for (Object o : values) {
+                byte[] b = (byte[]) o;
+                if (b != null && b.length > allowed_size) {
+                    throw new ConversionException("raw/byte[] is to large, allowed are "
+                            + allowed_size + ", given length " + b.length);
+                }
+            }
+        }
+
         @Override
         public Object readFromResArrays(ResArrays a) {
             return a.readRaw();
         }
 
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append("a.rawCount++;\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            int allowed_size = this.size == 0 ? 32767 : this.size;
+            String b = gen.newVar();
+            sb.append("byte[] ").append(b).append(" = (byte[]) ").append(value).append(";\n");
+            sb.append("if (").append(b).append(" != null && ").append(b).append(".length > ")
+                    .append(allowed_size).append(") {\n");
+            sb.append("throw new ProcedureCaller.ConversionException(\"raw/byte[] is to large, allowed are ")
+                    .append(allowed_size).append(", given length \" + ").append(b).append(".length);\n");
+            sb.append("}\n");
+            sb.append("a.addRaw(").append(b).append(");\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(target).append(" = r.readRaw();\n");
+        }
+
         @Override
         public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("ar.extend; ar(ar.last) := " + source + ";\n");
+            genPut(sb, 'r', source);
         }
 
         @Override
@@ -534,11 +903,49 @@ public final class ProcedureCaller {
         String name;
         boolean downCasing = false;
         ArrayList<Field> fields;
+        // filled by compile once the fields are known, the map keys of the
+        // fields (downcased if requested) and their types
+        String[] keys;
+        Type[] types;
+        RowMap.Keys rowKeys;
+
+        void compile() {
+            int n = this.fields.size();
+            this.keys = new String[n];
+            this.types = new Type[n];
+            for (int i = 0; i < n; i++) {
+                Field f = this.fields.get(i);
+                this.keys[i] = this.downCasing ? f.name.toLowerCase() : f.name;
+                this.types[i] = f.type;
+            }
+            this.rowKeys = new RowMap.Keys(this.keys);
+        }
 
         public boolean isAnonymous() {
             return this.owner == null;
         }
 
+        // the Map for a row of a columnar table, see TableType.columns
+        Map<?, ?> row(Object o) {
+            if (o == null || o instanceof Map) {
+                return (Map<?, ?>) o;
+            }
+            throw new ConversionException("expecting a Map for " + plsqlName() + ", not " + o.getClass().getName());
+        }
+
+        // the value of field i of a row of a columnar table, the fields of
+        // a null row are null
+        Object field(Map<?, ?> m, int i) {
+            if (m == null) {
+                return null;
+            }
+            Object x = m.get(this.keys[i]);
+            if (x == null && !m.containsKey(this.keys[i])) {
+                throw new ConversionException("slot not found: " + this.fields.get(i).name);
+            }
+            return x;
+        }
+
         @Override
         public String plsqlName() {
             return this.owner + "." + this.package_ + "." + this.name;
@@ -548,28 +955,96 @@ public final class ProcedureCaller {
         public void fillArgArrays(ArgArrays a, Object o) {
             if (o instanceof Map) {
                 Map m = (Map) o;
-                for (Field f : this.fields) {
-                    Object x;
-                    String fname = this.downCasing ? f.name.toLowerCase() : f.name;
-                    if (m.containsKey(fname)) {
-                        x = m.get(fname);
-                        f.type.fillArgArrays(a, x);
-                    } else {
-                        throw new ConversionException("slot not found: " + f.name);
+                final String[] keys = this.keys;
+                final Type[] types = this.types;
+                for (int i = 0; i < keys.length; i++) {
+                    Object x = m.get(keys[i]);
+                    if (x == null && !m.containsKey(keys[i])) {
+                        throw new ConversionException("slot not found: " + this.fields.get(i).name);
                     }
+                    types[i].fillArgArrays(a, x);
+                }
+            }
+        }
+
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            if (o instanceof Map) {
+                Map<?, ?> m = (Map<?, ?>) o;
+                final String[] keys = this.keys;
+                final Type[] types = this.types;
+                for (int i = 0; i < keys.length; i++) {
+                    types[i].countArgArrays(a, m.get(keys[i]));
                 }
             }
         }
 
         @Override
         public Object readFromResArrays(ResArrays a) {
-            HashMap<String, Object> m = new HashMap<>();
-            for (Field f : this.fields) {
-                Object o = f.type.readFromResArrays(a);
-                String fname = this.downCasing ? f.name.toLowerCase() : f.name;
-                m.put(fname, o);
+            final Type[] types = this.types;
+            final int[] slots = this.rowKeys.slots;
+            Object[] values = new Object[this.rowKeys.size()];
+            for (int i = 0; i < types.length; i++) {
+                values[slots[i]] = types[i].readFromResArrays(a);
             }
-            return m;
+            return new RowMap(this.rowKeys, values);
+        }
+
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "count", value, (b, x) -> genJavaCountBody(b, gen, x)));
+        }
+
+        private void genJavaCountBody(StringBuilder sb, JavaGen gen, String value) {
+            String m = gen.newVar();
+            sb.append("if (").append(value).append(" instanceof java.util.Map) {\n");
+            sb.append("java.util.Map ").append(m).append(" = (java.util.Map) ").append(value).append(";\n");
+            for (int i = 0; i < this.keys.length; i++) {
+                String x = gen.newVar();
+                sb.append("Object ").append(x).append(" = ").append(m).append(".get(")
+                        .append(javaString(this.keys[i])).append(");\n");
+                this.types[i].genJavaCount(sb, gen, x);
+            }
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "fill", value, (b, x) -> genJavaFillBody(b, gen, x)));
+        }
+
+        private void genJavaFillBody(StringBuilder sb, JavaGen gen, String value) {
+            String m = gen.newVar();
+            sb.append("if (").append(value).append(" instanceof java.util.Map) {\n");
+            sb.append("java.util.Map ").append(m).append(" = (java.util.Map) ").append(value).append(";\n");
+            for (int i = 0; i < this.keys.length; i++) {
+                String x = gen.newVar();
+                String key = javaString(this.keys[i]);
+                sb.append("Object ").append(x).append(" = ").append(m).append(".get(").append(key).append(");\n");
+                sb.append("if (").append(x).append(" == null && !").append(m).append(".containsKey(")
+                        .append(key).append(")) {\n");
+                sb.append("throw new ProcedureCaller.ConversionException(")
+                        .append(javaString("slot not found: " + this.fields.get(i).name)).append(");\n");
+                sb.append("}\n");
+                this.types[i].genJavaFill(sb, gen, x);
+            }
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(gen.helperCall(this, "read", target, (b, x) -> genJavaReadBody(b, gen, x)));
+        }
+
+        private void genJavaReadBody(StringBuilder sb, JavaGen gen, String target) {
+            String values = gen.newVar();
+            sb.append("Object[] ").append(values).append(" = new Object[")
+                    .append(this.rowKeys.size()).append("];\n");
+            for (int i = 0; i < this.types.length; i++) {
+                this.types[i].genJavaRead(sb, gen, values + "[" + this.rowKeys.slots[i] + "]");
+            }
+            sb.append(target).append(" = new RowMap(").append(gen.constant(this.rowKeys, "RowMap.Keys"))
+                    .append(", ").append(values).append(");\n");
         }
 
         @Override
@@ -603,46 +1078,465 @@ public final class ProcedureCaller {
             return this.owner + "." + this.package_ + "." + this.name;
         }
 
-        @Override
-        public void fillArgArrays(ArgArrays a, Object o) {
-            if (o == null) {
-                a.addNumber((BigDecimal) null);
-            } else {
-                ArrayList l = (ArrayList) o;
-                a.addNumber(l.size());
-                for (Object x : l) {
-                    this.slottype.fillArgArrays(a, x);
+        // a table of records with only scalar fields is sent by column: the
+        // size, then the first field of all rows, then the second field ...
+        // so each field is a contiguous slice of its array. Other tables
+        // are sent row by row. Returns the record type if the table is sent
+        // by column
+        RecordType columns() {
+            if (!(this.slottype instanceof RecordType)) {
+                return null;
+            }
+            for (Type t : ((RecordType) this.slottype).types) {
+                if (!isScalar(t)) {
+                    return null;
                 }
             }
+            return (RecordType) this.slottype;
         }
 
-        @Override
-        public Object readFromResArrays(ResArrays a) {
-            BigDecimal b = a.readBigDecimal();
-            if (b == null) {
-                return null;
-            } else {
-                int size = b.intValue();
-                ArrayList<Object> res = new ArrayList<>();
-                for (int i = 0; i < size; i++) {
-                    res.add(this.slottype.readFromResArrays(a));
-                }
-                return res;
+        static boolean isScalar(Type t) {
+            return t instanceof NamedType || t instanceof Varchar2Type || t instanceof RawType;
+        }
+
+        // tables of varchar2 and raw are copied as a whole, the other scalars
+        // need a conversion for each element. Returns false if l was not copied
+        static boolean fillScalars(ArgArrays a, Type slottype, List<?> l) {
+            if (slottype instanceof Varchar2Type) {
+                Object[] v = l.toArray();
+                ((Varchar2Type) slottype).check(v);
+                a.addStrings(v);
+                return true;
+            }
+            if (slottype instanceof RawType) {
+                Object[] v = l.toArray();
+                ((RawType) slottype).check(v);
+                a.addRaws(v);
+                return true;
             }
+            return false;
         }
 
-        @Override
-        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("an.extend;\n");
-            sb.append(" if " + source + " is null then\n");
-            sb.append("    an(an.last) := null;\n");
-            sb.append("else \n");
-            sb.append("  an(an.last) := nvl(" + source + ".last, 0);\n");
-            String index = "i" + counter.incrementAndGet();
-            sb.append("for " + index + " in 1 .. nvl(" + source + ".last,0) loop\n");
-            this.slottype.genWriteThing(sb, counter, source + "(" + index + ")");
-            sb.append("end loop;\n");
-            sb.append("end if;\n");
+        // tables of number, varchar2 and raw are read as a whole, null for
+        // the other types
+        static ArrayList<Object> readScalars(ResArrays a, Type slottype, int size) {
+            if (slottype instanceof NumberType) {
+                return a.readBigDecimals(size);
+            } else if (slottype instanceof Varchar2Type) {
+                return a.readStrings(size);
+            } else if (slottype instanceof RawType) {
+                return a.readRaws(size);
+            } else {
+                return null;
+            }
+        }
+
+        // the PL/SQL value of scalar x in its array and back
+        static String scalarValue(Type t, String x) {
+            if (t instanceof BooleanType) {
+                return "case when " + x + " then 1 when not " + x + " then 0 else null end";
+            }
+            return x;
+        }
+
+        static String scalarRead(Type t, String x) {
+            if (t instanceof BooleanType) {
+                return x + "=1";
+            }
+            return x;
+        }
+
+        // copy the scalars source(i)suffix for i in 1 .. size to their output
+        // array in one loop, there must be room for them, see genReserve
+        static void genWriteSlice(StringBuilder sb, AtomicInteger counter, Type t, String source, String suffix,
+                String size) {
+            char c = channel(t);
+            String out = "out" + c;
+            String index = "i" + counter.incrementAndGet();
+            sb.append("for ").append(index).append(" in 1 .. ").append(size).append(" loop a").append(c)
+                    .append("(").append(out).append(" + ").append(index).append(") := ")
+                    .append(scalarValue(t, source + "(" + index + ")" + suffix)).append("; end loop;\n");
+            sb.append(out).append(" := ").append(out).append(" + ").append(size).append(";\n");
+        }
+
+        // the inverse of genWriteSlice, size_ values to target(i)suffix
+        static void genReadSlice(StringBuilder sb, AtomicInteger counter, Type t, String target, String suffix) {
+            char c = channel(t);
+            String in = "in" + c;
+            String index = "i" + counter.incrementAndGet();
+            sb.append("for ").append(index).append(" in 1 .. size_ loop ").append(target).append("(").append(index)
+                    .append(")").append(suffix).append(" := ")
+                    .append(scalarRead(t, "a" + c + "(" + in + " + " + index + " - 1)")).append("; end loop;\n");
+            sb.append(in).append(" := ").append(in).append(" + size_;\n");
+        }
+
+        // the array a scalar type is sent in: n, v, d or r
+        static char channel(Type t) {
+            if (t instanceof DateType) {
+                return 'd';
+            } else if (t instanceof Varchar2Type) {
+                return 'v';
+            } else if (t instanceof RawType) {
+                return 'r';
+            } else {
+                return 'n';
+            }
+        }
+
+        // the count in ArgArrays for an array
+        static String countField(char channel) {
+            switch (channel) {
+                case 'd':
+                    return "dateCount";
+                case 'v':
+                    return "varchar2Count";
+                case 'r':
+                    return "rawCount";
+                default:
+                    return "decimalCount";
+            }
+        }
+
+        // the entries of n rows of rec, scalars need one entry whatever
+        // the value is
+        static void countColumns(ArgArrays a, RecordType rec, int n) {
+            for (Type t : rec.types) {
+                for (int j = 0; j < n; j++) {
+                    t.countArgArrays(a, null);
+                }
+            }
+        }
+
+        static void fillColumns(ArgArrays a, RecordType rec, List<?> l) {
+            int n = l.size();
+            Map<?, ?>[] rows = new Map<?, ?>[n];
+            for (int j = 0; j < n; j++) {
+                rows[j] = rec.row(l.get(j));
+            }
+            final Type[] types = rec.types;
+            for (int i = 0; i < types.length; i++) {
+                Type t = types[i];
+                for (int j = 0; j < n; j++) {
+                    t.fillArgArrays(a, rec.field(rows[j], i));
+                }
+            }
+        }
+
+        static ArrayList<Object> readColumns(ResArrays a, RecordType rec, int size) {
+            final Type[] types = rec.types;
+            final int[] slots = rec.rowKeys.slots;
+            Object[][] values = new Object[size][rec.rowKeys.size()];
+            for (int i = 0; i < types.length; i++) {
+                Type t = types[i];
+                int slot = slots[i];
+                for (int j = 0; j < size; j++) {
+                    values[j][slot] = t.readFromResArrays(a);
+                }
+            }
+            ArrayList<Object> res = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                res.add(new RowMap(rec.rowKeys, values[j]));
+            }
+            return res;
+        }
+
+        @Override
+        public void fillArgArrays(ArgArrays a, Object o) {
+            if (o == null) {
+                a.addNumber((BigDecimal) null);
+            } else {
+                ArrayList l = (ArrayList) o;
+                a.addNumber(l.size());
+                RecordType rec = columns();
+                if (rec != null) {
+                    fillColumns(a, rec, l);
+                    return;
+                }
+                if (fillScalars(a, this.slottype, l)) {
+                    return;
+                }
+                for (Object x : l) {
+                    this.slottype.fillArgArrays(a, x);
+                }
+            }
+        }
+
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.decimalCount++;
+            if (o != null) {
+                RecordType rec = columns();
+                if (rec != null) {
+                    countColumns(a, rec, ((ArrayList) o).size());
+                    return;
+                }
+                for (Object x : (ArrayList) o) {
+                    this.slottype.countArgArrays(a, x);
+                }
+            }
+        }
+
+        @Override
+        public Object readFromResArrays(ResArrays a) {
+            BigDecimal b = a.readBigDecimal();
+            if (b == null) {
+                return null;
+            } else {
+                int size = b.intValue();
+                RecordType rec = columns();
+                if (rec != null) {
+                    return readColumns(a, rec, size);
+                }
+                ArrayList<Object> res = readScalars(a, this.slottype, size);
+                if (res != null) {
+                    return res;
+                }
+                res = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    res.add(this.slottype.readFromResArrays(a));
+                }
+                return res;
+            }
+        }
+
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "count", value, (b, x) -> genJavaCountBody(b, gen, x)));
+        }
+
+        private void genJavaCountBody(StringBuilder sb, JavaGen gen, String value) {
+            RecordType rec = columns();
+            if (rec != null) {
+                String n = gen.newVar();
+                sb.append("a.decimalCount++;\n");
+                sb.append("if (").append(value).append(" != null) {\n");
+                sb.append("int ").append(n).append(" = ((java.util.ArrayList) ").append(value).append(").size();\n");
+                for (Type t : rec.types) {
+                    sb.append("a.").append(countField(channel(t))).append(" += ").append(n).append(";\n");
+                }
+                sb.append("}\n");
+                return;
+            }
+            String l = gen.newVar();
+            String i = gen.newVar();
+            String x = gen.newVar();
+            sb.append("a.decimalCount++;\n");
+            sb.append("if (").append(value).append(" != null) {\n");
+            sb.append("java.util.ArrayList ").append(l).append(" = (java.util.ArrayList) ").append(value).append(";\n");
+            sb.append("for (int ").append(i).append(" = 0; ").append(i).append(" < ").append(l)
+                    .append(".size(); ").append(i).append("++) {\n");
+            sb.append("Object ").append(x).append(" = ").append(l).append(".get(").append(i).append(");\n");
+            this.slottype.genJavaCount(sb, gen, x);
+            sb.append("}\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "fill", value, (b, x) -> genJavaFillBody(b, gen, x)));
+        }
+
+        private void genJavaFillBody(StringBuilder sb, JavaGen gen, String value) {
+            RecordType rec = columns();
+            if (rec != null) {
+                genJavaFillColumns(sb, gen, value, rec);
+                return;
+            }
+            if (this.slottype instanceof Varchar2Type || this.slottype instanceof RawType) {
+                genJavaFillScalars(sb, gen, value);
+                return;
+            }
+            String l = gen.newVar();
+            String i = gen.newVar();
+            String x = gen.newVar();
+            sb.append("if (").append(value).append(" == null) {\n");
+            sb.append("a.addNumber((Number) null);\n");
+            sb.append("} else {\n");
+            sb.append("java.util.ArrayList ").append(l).append(" = (java.util.ArrayList) ").append(value).append(";\n");
+            sb.append("a.addNumber(").append(l).append(".size());\n");
+            sb.append("for (int ").append(i).append(" = 0; ").append(i).append(" < ").append(l)
+                    .append(".size(); ").append(i).append("++) {\n");
+            sb.append("Object ").append(x).append(" = ").append(l).append(".get(").append(i).append(");\n");
+            this.slottype.genJavaFill(sb, gen, x);
+            sb.append("}\n");
+            sb.append("}\n");
+        }
+
+        // the same as fillScalars
+        private void genJavaFillScalars(StringBuilder sb, JavaGen gen, String value) {
+            boolean raw = this.slottype instanceof RawType;
+            int size = raw ? ((RawType) this.slottype).size : ((Varchar2Type) this.slottype).size;
+            int allowed_size = size == 0 ? 32767 : size;
+            String javaType = raw ? "byte[]" : "String";
+            String v = gen.newVar();
+            String x = gen.newVar();
+            String y = gen.newVar();
+            sb.append("if (").append(value).append(" == null) {\n");
+            sb.append("a.addNumber((Number) null);\n");
+            sb.append("} else {\n");
+            sb.append("Object[] ").append(v).append(" = ((java.util.ArrayList) ").append(value).append(").toArray();\n");
+            sb.append("a.addNumber(").append(v).append(".length);\n");
+            sb.append("for (Object ").append(x).append(" : ").append(v).append(") {\n");
+            sb.append(javaType).append(" ").append(y).append(" = (").append(javaType).append(") ").append(x).append(";\n");
+            String length = y + (raw ? ".length" : ".length()");
+            sb.append("if (").append(y).append(" != null && ").append(length).append(" > ")
+                    .append(allowed_size).append(") {\n");
+            sb.append("throw new ProcedureCaller.ConversionException(\"")
+                    .append(raw ? "raw/byte[] is to large" : "string is to large")
+                    .append(", allowed are ").append(allowed_size).append(", given length \" + ")
+                    .append(length).append(");\n");
+            sb.append("}\n");
+            sb.append("}\n");
+            sb.append(raw ? "a.addRaws(" : "a.addStrings(").append(v).append(");\n");
+            sb.append("}\n");
+        }
+
+        // the same as fillColumns
+        private void genJavaFillColumns(StringBuilder sb, JavaGen gen, String value, RecordType rec) {
+            String l = gen.newVar();
+            String n = gen.newVar();
+            String rows = gen.newVar();
+            String j = gen.newVar();
+            String x = gen.newVar();
+            sb.append("if (").append(value).append(" == null) {\n");
+            sb.append("a.addNumber((Number) null);\n");
+            sb.append("} else {\n");
+            sb.append("java.util.ArrayList ").append(l).append(" = (java.util.ArrayList) ").append(value).append(";\n");
+            sb.append("int ").append(n).append(" = ").append(l).append(".size();\n");
+            sb.append("a.addNumber(").append(n).append(");\n");
+            sb.append("java.util.Map[] ").append(rows).append(" = new java.util.Map[").append(n).append("];\n");
+            sb.append("for (int ").append(j).append(" = 0; ").append(j).append(" < ").append(n).append("; ")
+                    .append(j).append("++) {\n");
+            sb.append("Object ").append(x).append(" = ").append(l).append(".get(").append(j).append(");\n");
+            sb.append("if (").append(x).append(" != null && !(").append(x).append(" instanceof java.util.Map)) {\n");
+            sb.append("throw new ProcedureCaller.ConversionException(")
+                    .append(javaString("expecting a Map for " + rec.plsqlName() + ", not ")).append(" + ")
+                    .append(x).append(".getClass().getName());\n");
+            sb.append("}\n");
+            sb.append(rows).append("[").append(j).append("] = (java.util.Map) ").append(x).append(";\n");
+            sb.append("}\n");
+            for (int i = 0; i < rec.types.length; i++) {
+                String k = gen.newVar();
+                String m = gen.newVar();
+                String y = gen.newVar();
+                String key = javaString(rec.keys[i]);
+                sb.append("for (int ").append(k).append(" = 0; ").append(k).append(" < ").append(n).append("; ")
+                        .append(k).append("++) {\n");
+                sb.append("java.util.Map ").append(m).append(" = ").append(rows).append("[").append(k).append("];\n");
+                sb.append("Object ").append(y).append(" = null;\n");
+                sb.append("if (").append(m).append(" != null) {\n");
+                sb.append(y).append(" = ").append(m).append(".get(").append(key).append(");\n");
+                sb.append("if (").append(y).append(" == null && !").append(m).append(".containsKey(")
+                        .append(key).append(")) {\n");
+                sb.append("throw new ProcedureCaller.ConversionException(")
+                        .append(javaString("slot not found: " + rec.fields.get(i).name)).append(");\n");
+                sb.append("}\n");
+                sb.append("}\n");
+                rec.types[i].genJavaFill(sb, gen, y);
+                sb.append("}\n");
+            }
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(gen.helperCall(this, "read", target, (b, x) -> genJavaReadBody(b, gen, x)));
+        }
+
+        private void genJavaReadBody(StringBuilder sb, JavaGen gen, String target) {
+            String b = gen.newVar();
+            String l = gen.newVar();
+            String i = gen.newVar();
+            String x = gen.newVar();
+            sb.append("java.math.BigDecimal ").append(b).append(" = r.readBigDecimal();\n");
+            sb.append("if (").append(b).append(" == null) {\n");
+            sb.append(target).append(" = null;\n");
+            sb.append("} else {\n");
+            RecordType rec = columns();
+            if (rec != null) {
+                // the same as readColumns
+                String n = gen.newVar();
+                String values = gen.newVar();
+                sb.append("int ").append(n).append(" = ").append(b).append(".intValue();\n");
+                sb.append("Object[][] ").append(values).append(" = new Object[").append(n).append("][")
+                        .append(rec.rowKeys.size()).append("];\n");
+                for (int f = 0; f < rec.types.length; f++) {
+                    String j = gen.newVar();
+                    sb.append("for (int ").append(j).append(" = 0; ").append(j).append(" < ").append(n).append("; ")
+                            .append(j).append("++) {\n");
+                    rec.types[f].genJavaRead(sb, gen, values + "[" + j + "][" + rec.rowKeys.slots[f] + "]");
+                    sb.append("}\n");
+                }
+                sb.append("java.util.ArrayList<Object> ").append(l).append(" = new java.util.ArrayList<>(")
+                        .append(n).append(");\n");
+                sb.append("for (int ").append(i).append(" = 0; ").append(i).append(" < ").append(n).append("; ")
+                        .append(i).append("++) {\n");
+                sb.append(l).append(".add(new RowMap(").append(gen.constant(rec.rowKeys, "RowMap.Keys"))
+                        .append(", ").append(values).append("[").append(i).append("]));\n");
+                sb.append("}\n");
+                sb.append(target).append(" = ").append(l).append(";\n");
+                sb.append("}\n");
+                return;
+            }
+            String bulk = this.slottype instanceof NumberType ? "readBigDecimals"
+                    : this.slottype instanceof Varchar2Type ? "readStrings"
+                    : this.slottype instanceof RawType ? "readRaws" : null;
+            if (bulk != null) {
+                // the same as readScalars
+                sb.append(target).append(" = r.").append(bulk).append("(").append(b).append(".intValue());\n");
+                sb.append("}\n");
+                return;
+            }
+            sb.append("java.util.ArrayList<Object> ").append(l).append(" = new java.util.ArrayList<>();\n");
+            sb.append("for (int ").append(i).append(" = ").append(b).append(".intValue(); ")
+                    .append(i).append(" > 0; ").append(i).append("--) {\n");
+            sb.append("Object ").append(x).append(";\n");
+            this.slottype.genJavaRead(sb, gen, x);
+            sb.append(l).append(".add(").append(x).append(");\n");
+            sb.append("}\n");
+            sb.append(target).append(" = ").append(l).append(";\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
+            sb.append(" if " + source + " is null then\n");
+            genPut(sb, 'n', "null");
+            sb.append("else \n");
+            genPut(sb, 'n', "nvl(" + source + ".last, 0)");
+            RecordType rec = columns();
+            if (rec != null) {
+                // extend the arrays once for all rows, then one loop per field
+                String size = "nvl(" + source + ".last, 0)";
+                for (char c : new char[]{'n', 'v', 'd', 'r'}) {
+                    int m = 0;
+                    for (Type t : rec.types) {
+                        if (channel(t) == c) {
+                            m++;
+                        }
+                    }
+                    if (m > 0) {
+                        genReserve(sb, c, m + " * " + size);
+                    }
+                }
+                for (Field f : rec.fields) {
+                    genWriteSlice(sb, counter, f.type, source, "." + f.name, size);
+                }
+                sb.append("end if;\n");
+                return;
+            }
+            if (isScalar(this.slottype)) {
+                String size = "nvl(" + source + ".last, 0)";
+                genReserve(sb, channel(this.slottype), size);
+                genWriteSlice(sb, counter, this.slottype, source, "", size);
+                sb.append("end if;\n");
+                return;
+            }
+            String index = "i" + counter.incrementAndGet();
+            sb.append("for " + index + " in 1 .. nvl(" + source + ".last,0) loop\n");
+            this.slottype.genWriteThing(sb, counter, source + "(" + index + ")");
+            sb.append("end loop;\n");
+            sb.append("end if;\n");
         }
 
         @Override
@@ -652,11 +1546,25 @@ public final class ProcedureCaller {
             sb.append("  ").append(target).append(":=null;\n");
             sb.append("else\n");
             sb.append(" ").append(target).append(" := new ")
-                    .append(this.package_).append(".").append(this.name).append("();\n");
+                    .append(this.plsqlName()).append("();\n");
+            sb.append(" ").append(target).append(".extend(size_);\n");
+            RecordType rec = columns();
+            if (rec != null) {
+                // one loop per field, the fields are scalars and do not change size_
+                for (Field f : rec.fields) {
+                    genReadSlice(sb, counter, f.type, target, "." + f.name);
+                }
+                sb.append("end if;\n");
+                return;
+            }
+            if (isScalar(this.slottype)) {
+                genReadSlice(sb, counter, this.slottype, target, "");
+                sb.append("end if;\n");
+                return;
+            }
             String index = "i" + counter.incrementAndGet();
             String newTarget = target + "(" + index + ")";
             sb.append("  for ").append(index).append(" in 1 .. size_ loop\n");
-            sb.append("" + target + ".extend();\n");
             this.slottype.genReadOutThing(sb, counter, newTarget);
             sb.append("end loop;\n");
             sb.append("end if;\n");
@@ -692,6 +1600,17 @@ public final class ProcedureCaller {
             }
         }
 
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.decimalCount++;
+            if (o != null) {
+                for (Object x : ((Map) o).values()) {
+                    a.varchar2Count++;
+                    this.slottype.countArgArrays(a, x);
+                }
+            }
+        }
+
         @Override
         public Object readFromResArrays(ResArrays a) {
             BigDecimal b = a.readBigDecimal();
@@ -708,16 +1627,82 @@ public final class ProcedureCaller {
             }
         }
 
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "count", value, (b, x) -> genJavaCountBody(b, gen, x)));
+        }
+
+        private void genJavaCountBody(StringBuilder sb, JavaGen gen, String value) {
+            String x = gen.newVar();
+            sb.append("a.decimalCount++;\n");
+            sb.append("if (").append(value).append(" != null) {\n");
+            sb.append("for (Object ").append(x).append(" : ((java.util.Map) ").append(value).append(").values()) {\n");
+            sb.append("a.varchar2Count++;\n");
+            this.slottype.genJavaCount(sb, gen, x);
+            sb.append("}\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "fill", value, (b, x) -> genJavaFillBody(b, gen, x)));
+        }
+
+        private void genJavaFillBody(StringBuilder sb, JavaGen gen, String value) {
+            String m = gen.newVar();
+            String e = gen.newVar();
+            String kv = gen.newVar();
+            String x = gen.newVar();
+            sb.append("if (").append(value).append(" == null) {\n");
+            sb.append("a.addNumber((Number) null);\n");
+            sb.append("} else {\n");
+            sb.append("java.util.Map ").append(m).append(" = (java.util.Map) ").append(value).append(";\n");
+            sb.append("a.addNumber(").append(m).append(".size());\n");
+            sb.append("for (Object ").append(e).append(" : ").append(m).append(".entrySet()) {\n");
+            sb.append("java.util.Map.Entry ").append(kv).append(" = (java.util.Map.Entry) ").append(e).append(";\n");
+            sb.append("a.addString((String) ").append(kv).append(".getKey());\n");
+            sb.append("Object ").append(x).append(" = ").append(kv).append(".getValue();\n");
+            this.slottype.genJavaFill(sb, gen, x);
+            sb.append("}\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(gen.helperCall(this, "read", target, (b, x) -> genJavaReadBody(b, gen, x)));
+        }
+
+        private void genJavaReadBody(StringBuilder sb, JavaGen gen, String target) {
+            String b = gen.newVar();
+            String m = gen.newVar();
+            String i = gen.newVar();
+            String k = gen.newVar();
+            String x = gen.newVar();
+            sb.append("java.math.BigDecimal ").append(b).append(" = r.readBigDecimal();\n");
+            sb.append("if (").append(b).append(" == null) {\n");
+            sb.append(target).append(" = null;\n");
+            sb.append("} else {\n");
+            sb.append("java.util.TreeMap<String, Object> ").append(m).append(" = new java.util.TreeMap<>();\n");
+            sb.append("for (int ").append(i).append(" = ").append(b).append(".intValue(); ")
+                    .append(i).append(" > 0; ").append(i).append("--) {\n");
+            sb.append("String ").append(k).append(" = r.readString();\n");
+            sb.append("Object ").append(x).append(";\n");
+            this.slottype.genJavaRead(sb, gen, x);
+            sb.append(m).append(".put(").append(k).append(", ").append(x).append(");\n");
+            sb.append("}\n");
+            sb.append(target).append(" = ").append(m).append(";\n");
+            sb.append("}\n");
+        }
+
         @Override
         public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("  an.extend;\n");
-            sb.append("  an(an.last) := " + source + ".count;\n");
+            genPut(sb, 'n', source + ".count");
             String index = "i" + counter.incrementAndGet();
             sb.append("declare " + index + " varchar2(32000) := " + source + ".first;\n");
             sb.append("begin\n");
             sb.append(" loop\n");
             sb.append("exit when " + index + " is null;\n");
-            sb.append("  av.extend; av(av.last) := " + index + ";\n");
+            genPut(sb, 'v', index);
             this.slottype.genWriteThing(sb, counter, source + "(" + index + ")");
             sb.append(" " + index + " := " + source + ".next(" + index + ");\n");
             sb.append("end loop;\n");
@@ -765,24 +1750,23 @@ public final class ProcedureCaller {
                 a.addNumber(tm.size());
                 for (Object entry : tm.entrySet()) {
                     Map.Entry kv = (Map.Entry) entry;
-                    Object key = kv.getKey();
-                    Object val = kv.getValue();
-                    if (key == null) {
-                        throw new NullPointerException("key in integer array is null");
-                    }
-                    if (key instanceof String) {
-                        Integer x = Integer.parseInt((String) key);
-                        a.addNumber(x);
-                    } else if (key instanceof Integer) {
-                        a.addNumber((Integer) key);
-                    } else {
-                        throw new RuntimeException("expecting an integer as key");
-                    }
+                    a.addNumber(indexByIntegerKey(kv.getKey()));
                     this.slottype.fillArgArrays(a, kv.getValue());
                 }
             }
         }
 
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            a.decimalCount++;
+            if (o != null) {
+                for (Object x : ((Map) o).values()) {
+                    a.decimalCount++;
+                    this.slottype.countArgArrays(a, x);
+                }
+            }
+        }
+
         @Override
         public Object readFromResArrays(ResArrays a) {
             BigDecimal b = a.readBigDecimal();
@@ -799,17 +1783,83 @@ public final class ProcedureCaller {
             }
         }
 
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "count", value, (b, x) -> genJavaCountBody(b, gen, x)));
+        }
+
+        private void genJavaCountBody(StringBuilder sb, JavaGen gen, String value) {
+            String x = gen.newVar();
+            sb.append("a.decimalCount++;\n");
+            sb.append("if (").append(value).append(" != null) {\n");
+            sb.append("for (Object ").append(x).append(" : ((java.util.Map) ").append(value).append(").values()) {\n");
+            sb.append("a.decimalCount++;\n");
+            this.slottype.genJavaCount(sb, gen, x);
+            sb.append("}\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            sb.append(gen.helperCall(this, "fill", value, (b, x) -> genJavaFillBody(b, gen, x)));
+        }
+
+        private void genJavaFillBody(StringBuilder sb, JavaGen gen, String value) {
+            String m = gen.newVar();
+            String e = gen.newVar();
+            String kv = gen.newVar();
+            String x = gen.newVar();
+            sb.append("if (").append(value).append(" == null) {\n");
+            sb.append("a.addNumber((Number) null);\n");
+            sb.append("} else {\n");
+            sb.append("java.util.Map ").append(m).append(" = (java.util.Map) ").append(value).append(";\n");
+            sb.append("a.addNumber(").append(m).append(".size());\n");
+            sb.append("for (Object ").append(e).append(" : ").append(m).append(".entrySet()) {\n");
+            sb.append("java.util.Map.Entry ").append(kv).append(" = (java.util.Map.Entry) ").append(e).append(";\n");
+            sb.append("a.addNumber(ProcedureCaller.indexByIntegerKey(").append(kv).append(".getKey()));\n");
+            sb.append("Object ").append(x).append(" = ").append(kv).append(".getValue();\n");
+            this.slottype.genJavaFill(sb, gen, x);
+            sb.append("}\n");
+            sb.append("}\n");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(gen.helperCall(this, "read", target, (b, x) -> genJavaReadBody(b, gen, x)));
+        }
+
+        private void genJavaReadBody(StringBuilder sb, JavaGen gen, String target) {
+            String b = gen.newVar();
+            String m = gen.newVar();
+            String i = gen.newVar();
+            String k = gen.newVar();
+            String x = gen.newVar();
+            sb.append("java.math.BigDecimal ").append(b).append(" = r.readBigDecimal();\n");
+            sb.append("if (").append(b).append(" == null) {\n");
+            sb.append(target).append(" = null;\n");
+            sb.append("} else {\n");
+            sb.append("java.util.TreeMap<Integer, Object> ").append(m).append(" = new java.util.TreeMap<>();\n");
+            sb.append("for (int ").append(i).append(" = ").append(b).append(".intValue(); ")
+                    .append(i).append(" > 0; ").append(i).append("--) {\n");
+            sb.append("Integer ").append(k).append(" = r.readBigDecimal().intValueExact();\n");
+            sb.append("Object ").append(x).append(";\n");
+            this.slottype.genJavaRead(sb, gen, x);
+            sb.append(m).append(".put(").append(k).append(", ").append(x).append(");\n");
+            sb.append("}\n");
+            sb.append(target).append(" = ").append(m).append(";\n");
+            sb.append("}\n");
+        }
+
         @Override
         public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("  an.extend;\n");
-            sb.append("  an(an.last) := " + source + ".count;\n");
+            genPut(sb, 'n', source + ".count");
 
             String index = "i" + counter.incrementAndGet();
-            sb.append("declare " + index + " integer := " + source + ".first;\n");
+            sb.append("declare " + index + " pls_integer := " + source + ".first;\n");
             sb.append("begin\n");
             sb.append(" loop\n");
             sb.append("exit when " + index + " is null;\n");
-            sb.append("  an.extend; an(an.last) := " + index + ";\n");
+            genPut(sb, 'n', index);
             this.slottype.genWriteThing(sb, counter, source + "(" + index + ")");
             sb.append(" " + index + " := " + source + ".next(" + index + ");\n");
             sb.append("end loop;\n");
@@ -825,7 +1875,7 @@ public final class ProcedureCaller {
             String index = "i" + counter.incrementAndGet();
             String key = "k" + counter.incrementAndGet();
             String newTarget = target + "(" + key + ")";
-            sb.append("declare " + key + " integer;\n");
+            sb.append("declare " + key + " pls_integer;\n");
             sb.append("begin\n");
             sb.append("  for ").append(index).append(" in 1 .. size_ loop\n");
             sb.append("  " + key + " :=an(inn); inn := inn+1;\n");
@@ -836,25 +1886,10 @@ public final class ProcedureCaller {
         }
     }
 
+    // ref cursors are OUT arguments or return values, they are read by JDBC.
+    // The generated block binds them to an OUT parameter of type cursor
     private static class SysRefCursorType extends Type {
 
-        // tricky : unlike for tables we do not know the size in advance
-        // and we do not know the columns
-        // thus when retrieving write the columns (name,type)
-        //   and then write the rows
-        // for a row write 1 into number and then the row data
-        // if there is no more data then write 0 into number
-        // support for clobs, cursor in result set?
-        // maybe a procedure whcih reads out the data and returns 
-        // a handle and an array (or just a string?) with the columns types for readput
-        final boolean exportDateAsString;
-        final boolean downCasing;
-
-        public SysRefCursorType(boolean exportDateAsString, boolean downCasing) {
-            this.exportDateAsString = exportDateAsString;
-            this.downCasing = downCasing;
-        }
-
         @Override
         public String plsqlName() {
             return "sys_refcursor";
@@ -865,47 +1900,14 @@ public final class ProcedureCaller {
             throw new Error("sys_refcursor may not be an \"IN\" or \"IN OUT\" parameter");
         }
 
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            throw new Error("sys_refcursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
         @Override
         public Object readFromResArrays(ResArrays a) {
-            int colcount = a.readBigDecimal().intValue();
-            ArrayList<String> colnames = new ArrayList<>();
-            ArrayList<String> coltypes = new ArrayList<>();
-            for (int i = 0; i < colcount; i++) {
-                String colname = a.readString();
-                if (this.downCasing) {
-                    colname = colname.toLowerCase();
-                }
-                colnames.add(colname);
-                coltypes.add(a.readString());
-            }
-            ArrayList<HashMap<String, Object>> l = new ArrayList<>();
-            while (true) {
-                if (a.readBigDecimal().intValue() == 0) {
-                    break;
-                }
-                HashMap<String, Object> m = new HashMap<>();
-                for (int i = 0; i < colcount; i++) {
-                    String t = coltypes.get(i);
-                    final Object o;
-                    if (t.equals("N")) {
-                        o = a.readBigDecimal();
-                    } else if (t.equals("V")) {
-                        o = a.readString();
-                    } else if (t.equals("D")) {
-                        final Date d = a.readDate();
-                        if (this.exportDateAsString) {
-                            o = dateToString(d);
-                        } else {
-                            o = d;
-                        }
-                    } else {
-                        throw new Error("unknwon column type: " + t);
-                    }
-                    m.put(colnames.get(i), o);
-                }
-                l.add(m);
-            }
-            return l;
+            throw new Error("BUG: ref cursors are read by JDBC");
         }
 
         @Override
@@ -915,820 +1917,4646 @@ public final class ProcedureCaller {
 
         @Override
         public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("declare h integer;\n");
-            sb.append(" t varchar2(100);\n");
-            sb.append(" rec_tab   DBMS_SQL.DESC_TAB;\n");
-            sb.append(" rec       DBMS_SQL.DESC_REC;\n");
-            sb.append(" x number;\n");
-            sb.append("num number;\n");
-            sb.append("dat date;\n");
-            sb.append("varc varchar2(4000);\n");
-            sb.append(" col_cnt integer;\n");
-            sb.append("begin\n");
-            sb.append(" h := DBMS_SQL.TO_CURSOR_NUMBER (" + source + ");\n");
-            sb.append(" DBMS_SQL.DESCRIBE_COLUMNS(h, col_cnt, rec_tab);\n");
-            sb.append(" an.extend; an(an.last):= col_cnt;\n");
-            sb.append(" for i in 1 .. rec_tab.last loop\n");
-            sb.append("  rec := rec_tab(i);\n");
-            sb.append("  av.extend; av(av.last):= rec.col_name;\n");
-            sb.append("if rec.col_type = dbms_types.TYPECODE_DATE then\n");
-            sb.append("        dbms_sql.define_column(h, i, dat);\n");
-            sb.append(" t:=t||'D';\n");
-            sb.append("elsif rec.col_type = dbms_types.TYPECODE_NUMBER then\n");
-            sb.append("        dbms_sql.define_column(h, i, num);\n");
-            sb.append(" t:=t||'N';\n");
-            sb.append("else\n");
-            sb.append("        dbms_sql.define_column(h, i, varc, 4000);\n");
-            sb.append(" t:=t||'V';\n");
-            sb.append("end if;");
-            sb.append("av.extend;av(av.last):=substr(t,i,1);\n");
-            sb.append(" end loop;\n");
-            sb.append(" loop\n");
-            sb.append("      x := DBMS_SQL.FETCH_ROWS(h);\n");
-            sb.append("      exit when x = 0;\n");
-            sb.append("      an.extend; an(an.last):= 1\n;");
-            sb.append("      for i in 1 .. col_cnt loop\n");
-            sb.append("        case substr(t,i,1) \n");
-            sb.append("         when 'D' then\n");
-            sb.append("          DBMS_SQL.COLUMN_VALUE(h, i, dat);\n");
-            sb.append("          ad.extend; ad(ad.last) := dat;\n");
-            sb.append("        when 'N' then\n");
-            sb.append("          DBMS_SQL.COLUMN_VALUE(h, i, num);\n");
-            sb.append("          an.extend; an(an.last) := num;\n");
-            sb.append("        when 'V' then\n");
-            sb.append("          DBMS_SQL.COLUMN_VALUE(h, i, varc);\n");
-            sb.append("          av.extend; av(av.last) := varc;\n");
-            sb.append("         else raise_application_error(-20000,'BUG: unknown internal type code: '||t);\n");
-            sb.append("         end case;\n");
-            sb.append("      end loop;\n");
-            sb.append("    end loop;\n");
-            sb.append("      an.extend; an(an.last):= 0\n;");
-            sb.append("end;");
-
-        }
-    }
-
-    private static ArrayList<Map<String, Object>> readSysRefCursor(boolean dateAsString, boolean downcasing, ResultSet rs) throws SQLException {
-
-        ResultSetMetaData md = rs.getMetaData();
-        ArrayList<String> fields = new ArrayList<>();
-        for (int i = 0; i < md.getColumnCount(); i++) {
-            if (downcasing) {
-                fields.add(md.getColumnName(i + 1).toLowerCase());
+            throw new Error("BUG: ref cursors are read by JDBC");
+        }
+
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            throw new Error("sys_refcursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            throw new Error("sys_refcursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(target).append(" = cursors.remove(0);\n");
+        }
+    }
+
+    // the columns of a result set from a ref cursor, looked at once per cursor
+    private static final class CursorColumns {
+
+        final RowMap.Keys keys;
+        final int[] types;
+        final ResultSetMetaData md;
+
+        // keys are the names for the columns, if null the column names are used
+        CursorColumns(ResultSet rs, boolean downcasing, RowMap.Keys keys) throws SQLException {
+            this.md = rs.getMetaData();
+            int n = this.md.getColumnCount();
+            ArrayList<String> fields = new ArrayList<>();
+            this.types = new int[n];
+            for (int i = 0; i < n; i++) {
+                if (downcasing) {
+                    fields.add(this.md.getColumnName(i + 1).toLowerCase());
+                } else {
+                    fields.add(this.md.getColumnName(i + 1));
+                }
+                this.types[i] = this.md.getColumnType(i + 1);
+            }
+            if (keys != null && keys.slots.length == n) {
+                this.keys = keys;
+            } else {
+                this.keys = new RowMap.Keys(fields);
+            }
+        }
+
+        // read column i of the current row, cursor columns are done by the caller
+        Object read(ResultSet rs, int i, boolean dateAsString) throws SQLException {
+            int ct = this.types[i];
+            if (ct == Types.VARCHAR) {
+                return rs.getString(i + 1);
+            } else if (ct == Types.BIGINT || ct == Types.DECIMAL || ct == Types.NUMERIC || ct == Types.INTEGER) {
+                return rs.getBigDecimal(i + 1);
+            } else if (ct == Types.DATE || ct == Types.TIMESTAMP) {
+                Timestamp ts = rs.getTimestamp(i + 1);
+                java.util.Date d = new java.util.Date(ts.getTime());
+                if (dateAsString) {
+                    return dateToString(d);
+                } else {
+                    return d;
+                }
+            } else if (ct == Types.VARBINARY) {
+                return rs.getBytes(i + 1);
             } else {
-                fields.add(md.getColumnName(i + 1));
+                throw new RuntimeException("type not supported: " + ct + " for column " + this.md.getColumnName(i + 1) + ", typename=" + this.md.getColumnTypeName(i + 1));
             }
         }
+    }
+
+    // read all rows of rs, its fetch size is set by the caller. Nested cursors
+    // get nestedFetchSize, fetches counts the round trips of rs and the
+    // nested cursors, defaultFetchSize is the row prefetch of the connection
+    private static ArrayList<Map<String, Object>> readSysRefCursor(boolean dateAsString, boolean downcasing,
+            int nestedFetchSize, int defaultFetchSize, RowMap.Keys keys, ResultSet rs, AtomicInteger fetches)
+            throws SQLException {
+        CursorColumns cols = new CursorColumns(rs, downcasing, keys);
         ArrayList<Map<String, Object>> res = new ArrayList<>();
         while (rs.next()) {
-            Map<String, Object> r = new HashMap<String, Object>();
-            for (int i = 0; i < md.getColumnCount(); i++) {
-                int ct = md.getColumnType(i + 1);
-                if (ct == Types.VARCHAR) {
-                    r.put(fields.get(i), rs.getString(i + 1));
-                } else if (ct == Types.BIGINT || ct == Types.DECIMAL || ct == Types.NUMERIC || ct == Types.INTEGER) {
-                    r.put(fields.get(i), rs.getBigDecimal(i + 1));
-                } else if (ct == OracleTypes.CURSOR) {
+            Object[] r = new Object[cols.keys.size()];
+            for (int i = 0; i < cols.types.length; i++) {
+                if (cols.types[i] == OracleTypes.CURSOR) {
                     try (ResultSet rs2 = ((OracleResultSet) rs).getCursor(i + 1)) {
-                        r.put(fields.get(i), readSysRefCursor(dateAsString, downcasing, rs2));
-                    }
-                } else if (ct == Types.DATE || ct == Types.TIMESTAMP) {
-                    Timestamp ts = rs.getTimestamp(i + 1);
-                    java.util.Date d = new java.util.Date(ts.getTime());
-                    if (dateAsString) {
-                        r.put(fields.get(i), dateToString(d));
-                    } else {
-                        r.put(fields.get(i), d);
+                        if (nestedFetchSize > 0) {
+                            rs2.setFetchSize(nestedFetchSize);
+                        }
+                        r[cols.keys.slots[i]] = readSysRefCursor(dateAsString, downcasing, nestedFetchSize, defaultFetchSize,
+                                null, rs2, fetches);
                     }
-                } else if (ct == Types.VARBINARY) {
-                    r.put(fields.get(i), rs.getBytes(i + 1));
                 } else {
-                    throw new RuntimeException("type not supported: " + ct + " for column " + fields.get(i) + ", typename=" + md.getColumnTypeName(i + 1));
+                    r[cols.keys.slots[i]] = cols.read(rs, i, dateAsString);
                 }
             }
-            res.add(r);
+            res.add(new RowMap(cols.keys, r));
         }
+        fetches.addAndGet(roundTrips(res.size(), rs.getFetchSize(), defaultFetchSize));
         return res;
     }
 
-    private static class TypedRefCursorType extends Type {
-
-        String owner;
-        String package_;
-        String name;
-        RecordType rectype;
+    // an estimate of the fetches for a cursor with n rows, the driver knows
+    // that there are no more rows when a fetch returns less rows than
+    // requested. Without a fetch size the driver uses defaultFetchSize.
+    private static int roundTrips(int n, int fetchSize, int defaultFetchSize) {
+        return n / Math.max(1, fetchSize > 0 ? fetchSize : defaultFetchSize) + 1;
+    }
 
-        @Override
-        public String plsqlName() {
-            return "sys_refcursor";
-        }
+    // the rows and row widths seen for one cursor of a procedure, used to
+    // choose the fetch size for the next call. Shared by all callers of
+    // the procedure, concurrent updates may get lost, this is only a hint
+    static final class CursorStats {
 
-        @Override
-        public void fillArgArrays(ArgArrays a, Object o) {
-            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
-        }
+        // the average number of rows, -1 if nothing was seen yet
+        volatile double rows = -1;
+        // the average bytes of a row
+        volatile double rowBytes = 0;
 
-        @Override
-        public Object readFromResArrays(ResArrays a) {
-            ArrayList<HashMap<String, Object>> l = new ArrayList<>();
-            while (true) {
-                if (a.readBigDecimal().intValue() == 0) {
-                    break;
+        void record(int n, double width) {
+            if (this.rows < 0) {
+                this.rows = n;
+                this.rowBytes = width;
+            } else {
+                this.rows = (3 * this.rows + n) / 4;
+                if (n > 0) {
+                    this.rowBytes = (3 * this.rowBytes + width) / 4;
                 }
-                @SuppressWarnings("unchecked")
-                HashMap<String, Object> m = (HashMap<String, Object>) rectype.readFromResArrays(a);
-                l.add(m);
             }
-            return l;
-        }
-
-        @Override
-        public void genReadOutThing(StringBuilder sb, AtomicInteger counter, String target) {
-            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
         }
+    }
 
-        @Override
-        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
-            sb.append("declare r " + rectype.plsqlName() + ";\n");
-            sb.append("x integer;\n");
-            sb.append("begin\n");
-            sb.append("loop\n");
-            sb.append(" fetch " + source + " into r;\n");
-            sb.append("if " + source + "%notfound then\n");
-            sb.append("  exit;\n");
-            sb.append("end if;\n");
-            sb.append("an.extend;an(an.last) := 1;\n");
-            rectype.genWriteThing(sb, counter, "r");
-            sb.append("end loop;\n");
-            sb.append("an.extend;an(an.last) := 0;\n");
-            sb.append("end;\n");
+    // an estimate of the bytes the driver needs for value v
+    private static int valueWidth(Object v) {
+        if (v instanceof String) {
+            return 2 * ((String) v).length();
+        } else if (v instanceof byte[]) {
+            return ((byte[]) v).length;
+        } else if (v instanceof BigDecimal) {
+            return 22;
+        } else if (v instanceof java.util.Date) {
+            return 7;
+        } else {
+            return 8;
         }
     }
 
-    // the arguments to a procedure/function
-    private static class Argument {
+    // the rows used to estimate the row width
+    private static final int WIDTH_SAMPLE_ROWS = 50;
 
-        public String name;
-        public String direction;
-        public Type type;
+    private static double averageRowWidth(List<Map<String, Object>> rows) {
+        int n = Math.min(rows.size(), WIDTH_SAMPLE_ROWS);
+        if (n == 0) {
+            return 0;
+        }
+        long w = 0;
+        for (int i = 0; i < n; i++) {
+            for (Object v : rows.get(i).values()) {
+                w += valueWidth(v);
+            }
+        }
+        return (double) w / n;
     }
 
-    // represents one procedure/function
-    private static class Procedure {
+    /**
+     * The rows of a ref cursor, fetched from the database while iterating.
+     * A RowCursor must be closed, this happens automatically after the last
+     * row. The value of a cursor column is a RowCursor too, it can be read
+     * until the next row of its parent is fetched.
+     */
+    public static final class RowCursor implements Iterator<Map<String, Object>>, AutoCloseable {
+
+        private final ProcedureCaller caller;
+        private final ResultSet rs;
+        private final CursorColumns cols;
+        private final int fetchSize;
+        // gets the rows and row width when all rows were read, may be null
+        private final CursorStats stats;
+        // run once when the cursor is closed, may be null
+        private final Runnable onClose;
+        private int rows = 0;
+        private long sampleWidth = 0;
+        // the cursors in the columns of the current row
+        private final ArrayList<RowCursor> nested = new ArrayList<>();
+        // the fetched row not yet returned by next
+        private Map<String, Object> row = null;
+        private boolean closed = false;
+
+        RowCursor(ProcedureCaller caller, ResultSet rs, int fetchSize, RowMap.Keys keys,
+                CursorStats stats, Runnable onClose) throws SQLException {
+            this.caller = caller;
+            this.rs = rs;
+            this.stats = stats;
+            this.onClose = onClose;
+            if (fetchSize > 0) {
+                rs.setFetchSize(fetchSize);
+            }
+            this.fetchSize = Math.max(1, fetchSize > 0 ? fetchSize : caller.connection.getDefaultRowPrefetch());
+            this.cols = new CursorColumns(rs, caller.downCasing, keys);
+        }
+
+        /**
+         * @return the names of the columns
+         */
+        public List<String> getColumnNames() {
+            return Collections.unmodifiableList(Arrays.asList(this.cols.keys.keys));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.row != null) {
+                return true;
+            }
+            if (this.closed) {
+                return false;
+            }
+            closeNested();
+            try {
+                if (this.rows % this.fetchSize == 0) {
+                    // the driver has no rows left, this is a round trip
+                    this.caller.roundTrips.incrementAndGet();
+                }
+                if (!this.rs.next()) {
+                    if (this.stats != null) {
+                        int n = Math.min(this.rows, WIDTH_SAMPLE_ROWS);
+                        this.stats.record(this.rows, n == 0 ? 0 : (double) this.sampleWidth / n);
+                    }
+                    close();
+                    return false;
+                }
+                Object[] r = new Object[this.cols.keys.size()];
+                for (int i = 0; i < this.cols.types.length; i++) {
+                    if (this.cols.types[i] == OracleTypes.CURSOR) {
+                        RowCursor c = new RowCursor(this.caller, ((OracleResultSet) this.rs).getCursor(i + 1),
+                                this.caller.cursorFetchSize, null, null, null);
+                        this.nested.add(c);
+                        r[this.cols.keys.slots[i]] = c;
+                    } else {
+                        r[this.cols.keys.slots[i]] = this.cols.read(this.rs, i, this.caller.exportDateAsString);
+                    }
+                }
+                if (this.rows < WIDTH_SAMPLE_ROWS) {
+                    for (Object v : r) {
+                        this.sampleWidth += valueWidth(v);
+                    }
+                }
+                this.rows++;
+                this.row = new RowMap(this.cols.keys, r);
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public Map<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map<String, Object> r = this.row;
+            this.row = null;
+            return r;
+        }
+
+        /**
+         * @return the remaining rows as a Stream, closing the Stream closes
+         * the cursor
+         */
+        public Stream<Map<String, Object>> stream() {
+            return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(this::close);
+        }
+
+        private void closeNested() {
+            RuntimeException ex = null;
+            for (RowCursor c : this.nested) {
+                try {
+                    c.close();
+                } catch (RuntimeException e) {
+                    if (ex == null) {
+                        ex = e;
+                    }
+                }
+            }
+            this.nested.clear();
+            if (ex != null) {
+                throw ex;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.row = null;
+            try {
+                try {
+                    closeNested();
+                } finally {
+                    this.rs.close();
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (this.onClose != null) {
+                    this.onClose.run();
+                }
+            }
+        }
+    }
+
+    // keeps a statement open until the cursors read from it are closed
+    private static final class StatementLease implements Runnable {
+
+        final ProcedureCaller caller;
+        final OracleCallableStatement cstm;
+        final String sql;
+        int open;
+        boolean released = false;
+
+        StatementLease(ProcedureCaller caller, OracleCallableStatement cstm, String sql, int open) {
+            this.caller = caller;
+            this.cstm = cstm;
+            this.sql = sql;
+            this.open = open;
+        }
+
+        // called when a cursor is closed
+        @Override
+        public void run() {
+            this.open--;
+            if (this.open <= 0) {
+                release();
+            }
+        }
+
+        void release() {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            try {
+                this.caller.releaseCall(this.cstm, this.sql);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * The result of {@link ProcedureCaller#callStreaming}. The values of the
+     * OUT cursor arguments and of a cursor return value are {@link RowCursor}s. The statement of the call
+     * stays open until all of them are closed.
+     */
+    public static final class StreamingResult implements AutoCloseable {
+
+        private final Map<String, Object> values;
+        private final ArrayList<RowCursor> cursors;
+
+        StreamingResult(Map<String, Object> values, ArrayList<RowCursor> cursors) {
+            this.values = Collections.unmodifiableMap(values);
+            this.cursors = cursors;
+        }
+
+        /**
+         * @return the OUT and IN OUT arguments and the return value, as for
+         * {@link ProcedureCaller#call(String, Map)}
+         */
+        public Map<String, Object> getValues() {
+            return this.values;
+        }
+
+        /**
+         * @param name the name of an OUT cursor argument
+         * @return the cursor
+         */
+        public RowCursor getCursor(String name) {
+            Object o = this.values.get(name);
+            if (!(o instanceof RowCursor)) {
+                throw new RuntimeException("not a cursor argument: " + name);
+            }
+            return (RowCursor) o;
+        }
+
+        /**
+         * close all cursors which are still open
+         */
+        @Override
+        public void close() {
+            RuntimeException ex = null;
+            for (RowCursor c : this.cursors) {
+                try {
+                    c.close();
+                } catch (RuntimeException e) {
+                    if (ex == null) {
+                        ex = e;
+                    }
+                }
+            }
+            if (ex != null) {
+                throw ex;
+            }
+        }
+    }
+
+    private static class TypedRefCursorType extends Type {
+
+        String owner;
+        String package_;
+        String name;
+        // the rows of the cursor, the Maps for the rows get their keys
+        RecordType rectype;
+
+        @Override
+        public String plsqlName() {
+            return "sys_refcursor";
+        }
+
+        @Override
+        public void fillArgArrays(ArgArrays a, Object o) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public void countArgArrays(ArgArrays a, Object o) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public Object readFromResArrays(ResArrays a) {
+            throw new Error("BUG: ref cursors are read by JDBC");
+        }
+
+        @Override
+        public void genReadOutThing(StringBuilder sb, AtomicInteger counter, String target) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public void genJavaCount(StringBuilder sb, JavaGen gen, String value) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public void genJavaFill(StringBuilder sb, JavaGen gen, String value) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        public void genJavaRead(StringBuilder sb, JavaGen gen, String target) {
+            sb.append(target).append(" = cursors.remove(0);\n");
+        }
+
+        @Override
+        public void genWriteThing(StringBuilder sb, AtomicInteger counter, String source) {
+            throw new Error("BUG: ref cursors are read by JDBC");
+        }
+    }
+
+    private static boolean isCursor(Type t) {
+        return t instanceof SysRefCursorType || t instanceof TypedRefCursorType;
+    }
+
+    // the keys for the rows of a cursor of type t, null if they are the
+    // column names
+    private static RowMap.Keys cursorKeys(Type t) {
+        return t instanceof TypedRefCursorType ? ((TypedRefCursorType) t).rectype.rowKeys : null;
+    }
+
+    // the arguments to a procedure/function
+    private static class Argument {
+
+        public String name;
+        // the key in the argument and result maps, name downcased if requested
+        public String key;
+        public String direction;
+        public Type type;
+    }
+
+    // represents one procedure/function
+    static class Procedure {
+
+        // not null if function
+        Type returnType;
+        // the fully qualified and quoted name used in the generated block,
+        // the Procedure is shared by all names resolving to the same object
+        String call_name;
+        String owner;
+        String package_; // could be null
+        String name;
+        int overload;
+        long object_id;
+        ArrayList<Argument> arguments;
+        // the generated pl/sql block, set when the procedure is loaded
+        String plsqlstatement = null;
+        // the generated marshaller, created on first use if requested
+        volatile Marshaller marshaller = null;
+        // why the marshaller could not be generated
+        volatile Throwable marshallerFailure = null;
+        // the bindings to Java classes for call(String, Object, Class) and
+        // callFunction, by class. ClassValue and not a map, the Procedure is
+        // shared JVM wide and must not keep the classes from being unloaded
+        final ClassValue<ArgsBinding> argsBindings = new ClassValue<ArgsBinding>() {
+            @Override
+            protected ArgsBinding computeValue(Class<?> cls) {
+                return new ArgsBinding(Procedure.this, cls);
+            }
+        };
+        final ClassValue<ResultBinding> resultBindings = new ClassValue<ResultBinding>() {
+            @Override
+            protected ResultBinding computeValue(Class<?> cls) {
+                return new ResultBinding(Procedure.this, cls);
+            }
+        };
+        final ClassValue<Codec> returnCodecs = new ClassValue<Codec>() {
+            @Override
+            protected Codec computeValue(Class<?> cls) {
+                return codec(Procedure.this.returnType, cls);
+            }
+        };
+        // the outputs and the block for lazy results, created on first use
+        volatile LazyLayout lazyLayout = null;
+        // for each cursor in cursorTypes what was seen so far, created on first use
+        volatile CursorStats[] cursorStats = null;
+        // the block for callBatch, created on first use
+        volatile String batchStatement = null;
+        // guards the generation of the marshaller, see callLock
+        final ReentrantLock marshallerLock = new ReentrantLock();
+    }
+
+    // the state while generating the source of a marshaller: the number of
+    // the next local variable and the constants the generated code uses,
+    // the marshaller gets the constants in the array c
+    static final class JavaGen {
+
+        private int counter = 0;
+        final ArrayList<Object> constants = new ArrayList<>();
+        // the name of the array with the constants in the generated code
+        String constantsArray = "c";
+
+        String newVar() {
+            this.counter++;
+            return "v" + this.counter;
+        }
+
+        // a Java expression for the constant o of class type
+        String constant(Object o, String type) {
+            this.constants.add(o);
+            return "((" + type + ") " + this.constantsArray + "[" + (this.constants.size() - 1) + "])";
+        }
+
+        // record and table types are converted by helper methods, one for
+        // each type and kind (count, fill or read), and the places where the
+        // type is used call the helper. Unrolled code for the fields of a
+        // record in every place would make methods larger than 8000 bytes
+        // which the JIT does not compile.
+        // The helpers are collected here, their modifiers are helperModifiers
+        // and their names end with helperSuffix
+        final StringBuilder helpers = new StringBuilder();
+        String helperModifiers = "private ";
+        String helperSuffix = "";
+        private final IdentityHashMap<Type, Integer> helperTypes = new IdentityHashMap<>();
+        private final HashSet<String> helperNames = new HashSet<>();
+
+        // the code which calls the helper of kind for type t with var, the
+        // argument or the target, body generates the code of the helper for
+        // a variable which is the argument or the target
+        String helperCall(Type t, String kind, String var, BiConsumer<StringBuilder, String> body) {
+            Integer n = this.helperTypes.get(t);
+            if (n == null) {
+                n = this.helperTypes.size() + 1;
+                this.helperTypes.put(t, n);
+            }
+            String name = kind + n + this.helperSuffix;
+            boolean read = kind.equals("read");
+            if (this.helperNames.add(name)) {
+                StringBuilder b = new StringBuilder();
+                String x = newVar();
+                if (read) {
+                    b.append(this.helperModifiers).append("Object ").append(name)
+                            .append("(ProcedureCaller.ResArrays r) {\n");
+                    b.append("Object ").append(x).append(";\n");
+                    body.accept(b, x);
+                    b.append("return ").append(x).append(";\n");
+                } else {
+                    b.append(this.helperModifiers).append("void ").append(name)
+                            .append("(Object ").append(x).append(", ProcedureCaller.ArgArrays a) {\n");
+                    body.accept(b, x);
+                }
+                b.append("}\n");
+                this.helpers.append(b);
+            }
+            return read ? var + " = " + name + "(r);\n" : name + "(" + var + ", a);\n";
+        }
+    }
+
+    // the base class of the generated marshallers, a generated marshaller
+    // does for one procedure what the loops in call(Procedure, Map) and the
+    // Types do, but in straight-line code for exactly this procedure.
+    // The subclasses are generated by genMarshallerSource and compiled
+    // by MarshallerCompiler
+    static abstract class Marshaller {
+
+        // the constants used by the generated code, see JavaGen
+        Object[] c;
+
+        abstract void count(Map<String, Object> args, ArgArrays a);
+
+        abstract void fill(Map<String, Object> args, ArgArrays a);
+
+        abstract Map<String, Object> read(ResArrays r, ArrayList<ArrayList<Map<String, Object>>> cursors);
+    }
+
+    // the properties of a Java class which is used for a record or for the
+    // arguments or results of a procedure. Either the components of a Java
+    // record (detected by reflection, we are on Java 8) or the fields of a
+    // class with a constructor without arguments.
+    // Property names are matched to PL/SQL names ignoring case and underscores
+    private static final class JavaClass {
+
+        final Class<?> cls;
+        final boolean isRecord;
+        final ArrayList<Property> properties = new ArrayList<>();
+        // record: canonical constructor spread over Object[], otherwise ()Object
+        final MethodHandle constructor;
+
+        // a ClassValue does not keep the classes from being unloaded
+        private static final ClassValue<JavaClass> classes = new ClassValue<JavaClass>() {
+            @Override
+            protected JavaClass computeValue(Class<?> cls) {
+                return new JavaClass(cls);
+            }
+        };
+
+        static JavaClass of(Class<?> cls) {
+            return classes.get(cls);
+        }
+
+        static String normalize(String name) {
+            return name.replace("_", "").toLowerCase();
+        }
+
+        private JavaClass(Class<?> cls) {
+            if (cls.isInterface() || cls.isPrimitive() || cls.isArray()
+                    || java.lang.reflect.Modifier.isAbstract(cls.getModifiers())) {
+                throw new ConversionException("can not use " + cls.getName() + " for a record");
+            }
+            this.cls = cls;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                this.isRecord = isRecord(cls);
+                if (this.isRecord) {
+                    Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(cls);
+                    Class<?>[] ctypes = new Class<?>[components.length];
+                    for (int i = 0; i < components.length; i++) {
+                        Object c = components[i];
+                        Class<?> cc = c.getClass();
+                        Method accessor = (Method) cc.getMethod("getAccessor").invoke(c);
+                        accessor.setAccessible(true);
+                        ctypes[i] = (Class<?>) cc.getMethod("getType").invoke(c);
+                        this.properties.add(new Property((String) cc.getMethod("getName").invoke(c),
+                                (java.lang.reflect.Type) cc.getMethod("getGenericType").invoke(c),
+                                ctypes[i], lookup.unreflect(accessor), null, i));
+                    }
+                    java.lang.reflect.Constructor<?> k = cls.getDeclaredConstructor(ctypes);
+                    k.setAccessible(true);
+                    this.constructor = lookup.unreflectConstructor(k)
+                            .asSpreader(Object[].class, ctypes.length)
+                            .asType(MethodType.methodType(Object.class, Object[].class));
+                } else {
+                    for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                        for (java.lang.reflect.Field f : c.getDeclaredFields()) {
+                            int mod = f.getModifiers();
+                            if (java.lang.reflect.Modifier.isStatic(mod)
+                                    || java.lang.reflect.Modifier.isTransient(mod) || f.isSynthetic()) {
+                                continue;
+                            }
+                            f.setAccessible(true);
+                            this.properties.add(new Property(f.getName(), f.getGenericType(), f.getType(),
+                                    lookup.unreflectGetter(f), lookup.unreflectSetter(f), this.properties.size()));
+                        }
+                    }
+                    java.lang.reflect.Constructor<?> k = cls.getDeclaredConstructor();
+                    k.setAccessible(true);
+                    this.constructor = lookup.unreflectConstructor(k)
+                            .asType(MethodType.methodType(Object.class));
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new ConversionException("can not use " + cls.getName() + " for a record: " + e);
+            }
+        }
+
+        private static boolean isRecord(Class<?> cls) throws ReflectiveOperationException {
+            try {
+                return (Boolean) Class.class.getMethod("isRecord").invoke(cls);
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        // the property for the PL/SQL name or null, it is an error if
+        // several properties match, e.g. A_B and AB
+        Property property(String name) {
+            String n = normalize(name);
+            Property res = null;
+            for (Property p : this.properties) {
+                if (normalize(p.name).equals(n)) {
+                    if (res != null) {
+                        throw new ConversionException("the properties " + res.name + " and " + p.name
+                                + " of " + this.cls.getName() + " both match " + name);
+                    }
+                    res = p;
+                }
+            }
+            return res;
+        }
+
+        Object get(Property p, Object o) {
+            try {
+                return (Object) p.getter.invokeExact(o);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        // a new instance, the property props[i] gets the value values[i],
+        // props[i] may be null, then values[i] is ignored
+        Object create(Property[] props, Object[] values) {
+            try {
+                if (this.isRecord) {
+                    Object[] cargs = new Object[this.properties.size()];
+                    for (Property p : this.properties) {
+                        cargs[p.index] = p.defaultValue;
+                    }
+                    for (int i = 0; i < props.length; i++) {
+                        if (props[i] != null && values[i] != null) {
+                            cargs[props[i].index] = values[i];
+                        }
+                    }
+                    return (Object) this.constructor.invokeExact(cargs);
+                } else {
+                    Object o = (Object) this.constructor.invokeExact();
+                    for (int i = 0; i < props.length; i++) {
+                        if (props[i] != null && (values[i] != null || props[i].defaultValue == null)) {
+                            props[i].setter.invokeExact(o, values[i]);
+                        }
+                    }
+                    return o;
+                }
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+    }
+
+    private static final class Property {
+
+        final String name;
+        final java.lang.reflect.Type type;
+        // the value for null, not null only for primitive types
+        final Object defaultValue;
+        // (Object)Object
+        final MethodHandle getter;
+        // (Object,Object)void, null for records
+        final MethodHandle setter;
+        // index of the field or record component
+        final int index;
+
+        Property(String name, java.lang.reflect.Type type, Class<?> raw,
+                MethodHandle getter, MethodHandle setter, int index) {
+            this.name = name;
+            this.type = type;
+            this.defaultValue = raw.isPrimitive() ? java.lang.reflect.Array.get(java.lang.reflect.Array.newInstance(raw, 1), 0) : null;
+            this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = setter == null ? null : setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            this.index = index;
+        }
+    }
+
+    static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new RuntimeException(t);
+    }
+
+    // converts the values of a Type directly from and to Java objects of a
+    // given class, without the HashMaps and ArrayLists of the Map based calls.
+    // created by codec(Type, java.lang.reflect.Type)
+    private static abstract class Codec {
+
+        abstract void count(ArgArrays a, Object o);
+
+        abstract void fill(ArgArrays a, Object o);
+
+        abstract Object read(ResArrays a);
+
+        // convert a value as it is in the rows of a cursor, these are the
+        // values of the Map based calls
+        Object convert(Object o) {
+            throw new ConversionException("can not convert " + o.getClass().getName());
+        }
+    }
+
+    // the target class is Object, the values are the ones of the Map based calls
+    private static final class TypeCodec extends Codec {
+
+        final Type type;
+
+        TypeCodec(Type type) {
+            this.type = type;
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            this.type.countArgArrays(a, o);
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            this.type.fillArgArrays(a, o);
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            return this.type.readFromResArrays(a);
+        }
+
+        @Override
+        Object convert(Object o) {
+            return o;
+        }
+    }
+
+    private static final class NumberCodec extends Codec {
+
+        static final int INT = 0;
+        static final int LONG = 1;
+        static final int DOUBLE = 2;
+        static final int BIGINTEGER = 3;
+        static final int BIGDECIMAL = 4;
+        final int kind;
+
+        NumberCodec(Class<?> cls) {
+            if (cls == int.class || cls == Integer.class) {
+                this.kind = INT;
+            } else if (cls == long.class || cls == Long.class) {
+                this.kind = LONG;
+            } else if (cls == double.class || cls == Double.class) {
+                this.kind = DOUBLE;
+            } else if (cls == BigInteger.class) {
+                this.kind = BIGINTEGER;
+            } else if (cls == BigDecimal.class || cls == Number.class) {
+                this.kind = BIGDECIMAL;
+            } else {
+                throw new ConversionException("can not convert a number to " + cls.getName());
+            }
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            a.decimalCount++;
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            a.addNumber((Number) o);
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            return convert(a.readBigDecimal());
+        }
+
+        @Override
+        Object convert(Object o) {
+            if (o == null) {
+                return null;
+            }
+            BigDecimal b = (BigDecimal) o;
+            switch (this.kind) {
+                case INT:
+                    return b.intValueExact();
+                case LONG:
+                    return b.longValueExact();
+                case DOUBLE:
+                    return b.doubleValue();
+                case BIGINTEGER:
+                    return b.toBigIntegerExact();
+                default:
+                    return b;
+            }
+        }
+    }
+
+    private static final class DateCodec extends Codec {
+
+        static final int DATE = 0;
+        static final int TIMESTAMP = 1;
+        static final int LOCALDATETIME = 2;
+        static final int LOCALDATE = 3;
+        static final int STRING = 4;
+        final int kind;
+
+        DateCodec(Class<?> cls) {
+            if (cls == java.util.Date.class) {
+                this.kind = DATE;
+            } else if (cls == Timestamp.class) {
+                this.kind = TIMESTAMP;
+            } else if (cls == LocalDateTime.class) {
+                this.kind = LOCALDATETIME;
+            } else if (cls == LocalDate.class) {
+                this.kind = LOCALDATE;
+            } else if (cls == String.class) {
+                this.kind = STRING;
+            } else {
+                throw new ConversionException("can not convert a date to " + cls.getName());
+            }
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            a.dateCount++;
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            if (o instanceof LocalDateTime) {
+                a.addDate(Timestamp.valueOf((LocalDateTime) o));
+            } else if (o instanceof LocalDate) {
+                a.addDate(Timestamp.valueOf(((LocalDate) o).atStartOfDay()));
+            } else if (o instanceof String) {
+                a.addDate(stringToDate((String) o));
+            } else {
+                a.addDate((java.util.Date) o);
+            }
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            return convert(a.readDate());
+        }
+
+        @Override
+        Object convert(Object o) {
+            if (o == null) {
+                return null;
+            }
+            java.util.Date d = o instanceof String ? stringToDate((String) o) : (java.util.Date) o;
+            switch (this.kind) {
+                case TIMESTAMP:
+                    return new Timestamp(d.getTime());
+                case LOCALDATETIME:
+                    return new Timestamp(d.getTime()).toLocalDateTime();
+                case LOCALDATE:
+                    return new Timestamp(d.getTime()).toLocalDateTime().toLocalDate();
+                case STRING:
+                    return dateToString(d);
+                default:
+                    return d;
+            }
+        }
+    }
+
+    // a record to a Java record or an object with fields
+    private static final class BeanCodec extends Codec {
+
+        final RecordType rtype;
+        final JavaClass jc;
+        final Property[] props;
+        final Codec[] codecs;
+
+        BeanCodec(RecordType rtype, JavaClass jc) {
+            this.rtype = rtype;
+            this.jc = jc;
+            int n = rtype.fields.size();
+            this.props = new Property[n];
+            this.codecs = new Codec[n];
+            for (int i = 0; i < n; i++) {
+                Field f = rtype.fields.get(i);
+                this.props[i] = jc.property(f.name);
+                this.codecs[i] = this.props[i] == null ? new TypeCodec(f.type) : codec(f.type, this.props[i].type);
+            }
+        }
+
+        private Object value(Object o, int i) {
+            if (this.props[i] == null) {
+                throw new ConversionException("slot not found: " + this.rtype.fields.get(i).name
+                        + " in " + this.jc.cls.getName());
+            }
+            return this.jc.get(this.props[i], o);
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            if (o != null) {
+                for (int i = 0; i < this.codecs.length; i++) {
+                    this.codecs[i].count(a, value(o, i));
+                }
+            }
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            if (o != null) {
+                for (int i = 0; i < this.codecs.length; i++) {
+                    this.codecs[i].fill(a, value(o, i));
+                }
+            }
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            Object[] values = new Object[this.codecs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = this.codecs[i].read(a);
+            }
+            return this.jc.create(this.props, values);
+        }
+
+        @Override
+        Object convert(Object o) {
+            if (o == null) {
+                return null;
+            }
+            Map<?, ?> m = (Map<?, ?>) o;
+            Object[] values = new Object[this.codecs.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = this.codecs[i].convert(m.get(this.rtype.keys[i]));
+            }
+            return this.jc.create(this.props, values);
+        }
+    }
+
+    // a table to a List or an array
+    private static final class ListCodec extends Codec {
+
+        final Codec slot;
+        // not null if the target is an array
+        final Class<?> componentType;
+        // not null if the table is sent by column, see TableType.columns
+        final RecordType columns;
+
+        ListCodec(Codec slot, Class<?> componentType, RecordType columns) {
+            this.slot = slot;
+            this.componentType = componentType;
+            this.columns = columns;
+        }
+
+        private List<?> list(Object o) {
+            if (o instanceof List) {
+                return (List<?>) o;
+            }
+            if (o instanceof Object[]) {
+                return java.util.Arrays.asList((Object[]) o);
+            }
+            int n = java.lang.reflect.Array.getLength(o);
+            ArrayList<Object> l = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                l.add(java.lang.reflect.Array.get(o, i));
+            }
+            return l;
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            a.decimalCount++;
+            if (o != null) {
+                if (this.columns != null) {
+                    TableType.countColumns(a, this.columns, list(o).size());
+                    return;
+                }
+                for (Object x : list(o)) {
+                    this.slot.count(a, x);
+                }
+            }
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            if (o == null) {
+                a.addNumber((Number) null);
+            } else {
+                List<?> l = list(o);
+                a.addNumber(l.size());
+                if (this.columns != null) {
+                    fillColumns(a, l);
+                    return;
+                }
+                if (this.slot instanceof TypeCodec && TableType.fillScalars(a, ((TypeCodec) this.slot).type, l)) {
+                    return;
+                }
+                for (Object x : l) {
+                    this.slot.fill(a, x);
+                }
+            }
+        }
+
+        private void fillColumns(ArgArrays a, List<?> l) {
+            if (!(this.slot instanceof BeanCodec)) {
+                TableType.fillColumns(a, this.columns, l);
+                return;
+            }
+            BeanCodec bc = (BeanCodec) this.slot;
+            for (int i = 0; i < bc.codecs.length; i++) {
+                Codec c = bc.codecs[i];
+                for (Object x : l) {
+                    c.fill(a, x == null ? null : bc.value(x, i));
+                }
+            }
+        }
+
+        private List<?> readColumns(ResArrays a, int size) {
+            if (!(this.slot instanceof BeanCodec)) {
+                return TableType.readColumns(a, this.columns, size);
+            }
+            BeanCodec bc = (BeanCodec) this.slot;
+            Object[][] values = new Object[size][bc.codecs.length];
+            for (int i = 0; i < bc.codecs.length; i++) {
+                Codec c = bc.codecs[i];
+                for (int j = 0; j < size; j++) {
+                    values[j][i] = c.read(a);
+                }
+            }
+            ArrayList<Object> res = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                res.add(bc.jc.create(bc.props, values[j]));
+            }
+            return res;
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            BigDecimal b = a.readBigDecimal();
+            if (b == null) {
+                return null;
+            }
+            int size = b.intValue();
+            if (this.columns != null) {
+                List<?> l = readColumns(a, size);
+                if (this.componentType == null) {
+                    return l;
+                }
+                Object res = java.lang.reflect.Array.newInstance(this.componentType, size);
+                for (int i = 0; i < size; i++) {
+                    java.lang.reflect.Array.set(res, i, l.get(i));
+                }
+                return res;
+            }
+            if (this.componentType == null && this.slot instanceof TypeCodec) {
+                ArrayList<Object> res = TableType.readScalars(a, ((TypeCodec) this.slot).type, size);
+                if (res != null) {
+                    return res;
+                }
+            }
+            if (this.componentType != null) {
+                Object res = java.lang.reflect.Array.newInstance(this.componentType, size);
+                for (int i = 0; i < size; i++) {
+                    java.lang.reflect.Array.set(res, i, this.slot.read(a));
+                }
+                return res;
+            }
+            ArrayList<Object> res = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                res.add(this.slot.read(a));
+            }
+            return res;
+        }
+    }
+
+    // index by tables to a Map
+    private static final class MapCodec extends Codec {
+
+        final boolean integerKeys;
+        final Codec slot;
+
+        MapCodec(boolean integerKeys, Codec slot) {
+            this.integerKeys = integerKeys;
+            this.slot = slot;
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            a.decimalCount++;
+            if (o != null) {
+                for (Object x : ((Map<?, ?>) o).values()) {
+                    if (this.integerKeys) {
+                        a.decimalCount++;
+                    } else {
+                        a.varchar2Count++;
+                    }
+                    this.slot.count(a, x);
+                }
+            }
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            if (o == null) {
+                a.addNumber((Number) null);
+            } else {
+                Map<?, ?> m = (Map<?, ?>) o;
+                a.addNumber(m.size());
+                for (Map.Entry<?, ?> kv : m.entrySet()) {
+                    if (this.integerKeys) {
+                        a.addNumber(indexByIntegerKey(kv.getKey()));
+                    } else {
+                        a.addString((String) kv.getKey());
+                    }
+                    this.slot.fill(a, kv.getValue());
+                }
+            }
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            BigDecimal b = a.readBigDecimal();
+            if (b == null) {
+                return null;
+            }
+            int size = b.intValue();
+            TreeMap<Object, Object> res = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                Object k = this.integerKeys ? (Object) a.readBigDecimal().intValueExact() : a.readString();
+                res.put(k, this.slot.read(a));
+            }
+            return res;
+        }
+    }
+
+    // the rows of a cursor, they are read by JDBC as Maps and converted
+    private static final class CursorCodec extends Codec {
+
+        // null if the rows stay Maps
+        final Codec row;
+
+        CursorCodec(Codec row) {
+            this.row = row;
+        }
+
+        @Override
+        void count(ArgArrays a, Object o) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        void fill(ArgArrays a, Object o) {
+            throw new Error("ref cursor may not be an \"IN\" or \"IN OUT\" parameter");
+        }
+
+        @Override
+        Object read(ResArrays a) {
+            throw new Error("BUG: ref cursors are read by JDBC");
+        }
+
+        @Override
+        Object convert(Object o) {
+            if (this.row == null) {
+                return o;
+            }
+            List<?> rows = (List<?>) o;
+            ArrayList<Object> l = new ArrayList<>(rows.size());
+            for (Object x : rows) {
+                l.add(this.row.convert(x));
+            }
+            return l;
+        }
+    }
+
+    private static Class<?> rawClass(java.lang.reflect.Type t) {
+        if (t instanceof Class) {
+            return (Class<?>) t;
+        } else if (t instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) t).getRawType();
+        } else if (t instanceof WildcardType) {
+            return rawClass(((WildcardType) t).getUpperBounds()[0]);
+        } else if (t instanceof GenericArrayType) {
+            Class<?> c = rawClass(((GenericArrayType) t).getGenericComponentType());
+            return java.lang.reflect.Array.newInstance(c, 0).getClass();
+        } else {
+            return Object.class;
+        }
+    }
+
+    private static java.lang.reflect.Type typeArgument(java.lang.reflect.Type t, int i) {
+        if (t instanceof ParameterizedType) {
+            return ((ParameterizedType) t).getActualTypeArguments()[i];
+        }
+        return Object.class;
+    }
+
+    private static java.lang.reflect.Type componentType(java.lang.reflect.Type t) {
+        if (t instanceof GenericArrayType) {
+            return ((GenericArrayType) t).getGenericComponentType();
+        }
+        return rawClass(t).getComponentType();
+    }
+
+    // the codec to convert between values of Type t and Java values of type target
+    private static Codec codec(Type t, java.lang.reflect.Type target) {
+        Class<?> raw = rawClass(target);
+        if (isCursor(t)) {
+            if (raw.isAssignableFrom(ArrayList.class)) {
+                java.lang.reflect.Type row = typeArgument(target, 0);
+                if (t instanceof TypedRefCursorType && !rawClass(row).isAssignableFrom(RowMap.class)) {
+                    return new CursorCodec(codec(((TypedRefCursorType) t).rectype, row));
+                }
+                return new CursorCodec(null);
+            }
+            throw new ConversionException("can not convert " + t.plsqlName() + " to " + target.getTypeName());
+        }
+        if (raw == Object.class) {
+            return new TypeCodec(t);
+        }
+        if (t instanceof NumberType) {
+            return new NumberCodec(raw);
+        }
+        if (t instanceof DateType) {
+            return new DateCodec(raw);
+        }
+        if (t instanceof BooleanType) {
+            if (raw == boolean.class || raw == Boolean.class) {
+                return new TypeCodec(t);
+            }
+        } else if (t instanceof Varchar2Type) {
+            if (raw == String.class || raw == CharSequence.class) {
+                return new TypeCodec(t);
+            }
+        } else if (t instanceof RawType) {
+            if (raw == byte[].class) {
+                return new TypeCodec(t);
+            }
+        } else if (t instanceof RecordType) {
+            if (raw.isAssignableFrom(HashMap.class)) {
+                return new TypeCodec(t);
+            }
+            return new BeanCodec((RecordType) t, JavaClass.of(raw));
+        } else if (t instanceof TableType) {
+            Type slottype = ((TableType) t).slottype;
+            RecordType columns = ((TableType) t).columns();
+            if (raw.isArray()) {
+                return new ListCodec(codec(slottype, componentType(target)), raw.getComponentType(), columns);
+            }
+            if (raw.isAssignableFrom(ArrayList.class)) {
+                return new ListCodec(codec(slottype, typeArgument(target, 0)), null, columns);
+            }
+        } else if (t instanceof IndexByStringTableType || t instanceof IndexByIntegerTableType) {
+            if (raw.isAssignableFrom(TreeMap.class)) {
+                Type slottype = t instanceof IndexByStringTableType
+                        ? ((IndexByStringTableType) t).slottype
+                        : ((IndexByIntegerTableType) t).slottype;
+                return new MapCodec(t instanceof IndexByIntegerTableType, codec(slottype, typeArgument(target, 1)));
+            }
+        }
+        throw new ConversionException("can not convert " + t.plsqlName() + " to " + target.getTypeName());
+    }
+
+    // the IN and IN OUT arguments of a procedure read from an object
+    private static final class ArgsBinding {
+
+        final JavaClass jc;
+        final ArrayList<Property> props = new ArrayList<>();
+        final ArrayList<Codec> codecs = new ArrayList<>();
+
+        ArgsBinding(Procedure proc, Class<?> cls) {
+            this.jc = JavaClass.of(cls);
+            for (Argument arg : proc.arguments) {
+                if (arg.direction.equals("OUT")) {
+                    continue;
+                }
+                Property p = this.jc.property(arg.name);
+                if (p == null) {
+                    throw new ConversionException("could not find argument " + arg.name + " in " + cls.getName());
+                }
+                this.props.add(p);
+                this.codecs.add(codec(arg.type, p.type));
+            }
+        }
+
+        ArgArrays argArrays(Object o) {
+            int n = this.props.size();
+            Object[] values = new Object[n];
+            ArgArrays a = new ArgArrays();
+            for (int i = 0; i < n; i++) {
+                values[i] = this.jc.get(this.props.get(i), o);
+                this.codecs.get(i).count(a, values[i]);
+            }
+            a.allocate();
+            for (int i = 0; i < n; i++) {
+                this.codecs.get(i).fill(a, values[i]);
+            }
+            return a;
+        }
+    }
+
+    // the OUT and IN OUT arguments of a procedure stored into a new object,
+    // arguments without a property in the class are dropped
+    private static final class ResultBinding {
+
+        final JavaClass jc;
+        final Property[] props;
+        // CursorCodecs for cursors, they are read by JDBC
+        final Codec[] codecs;
+
+        ResultBinding(Procedure proc, Class<?> cls) {
+            this.jc = JavaClass.of(cls);
+            ArrayList<Property> pl = new ArrayList<>();
+            ArrayList<Codec> cl = new ArrayList<>();
+            for (Argument arg : proc.arguments) {
+                if (arg.direction.equals("IN")) {
+                    continue;
+                }
+                Property p = this.jc.property(arg.name);
+                if (p == null) {
+                    cl.add(isCursor(arg.type) ? new CursorCodec(null) : new TypeCodec(arg.type));
+                } else {
+                    cl.add(codec(arg.type, p.type));
+                }
+                pl.add(p);
+            }
+            this.props = pl.toArray(new Property[0]);
+            this.codecs = cl.toArray(new Codec[0]);
+        }
+
+        Object read(ResArrays ra, ArrayList<ArrayList<Map<String, Object>>> cursors) {
+            Object[] values = new Object[this.props.length];
+            for (int i = 0; i < values.length; i++) {
+                if (this.codecs[i] instanceof CursorCodec) {
+                    values[i] = this.codecs[i].convert(cursors.remove(0));
+                } else {
+                    values[i] = this.codecs[i].read(ra);
+                }
+            }
+            return this.jc.create(this.props, values);
+        }
+    }
+
+    // this class corresponds 1:1 the columns in all_arguments, some columns are lft out
+    // when working with the data in all_arguments it is transformed into an ArrayList
+    // of this ArgumentsRow
+    private static class ArgumentsRow {
+
+        String owner;
+        String object_name;
+        String package_name;
+        String argument_name;
+        int position;
+        int sequence;
+        int data_level;
+        String data_type;
+        int overload;
+        String in_out;
+        String type_owner;
+        String type_name;
+        String type_subname;
+        String pls_type;
+        int data_length;
+        long object_id;
+        // not from all_arguments: for PL/SQL TABLE the kind of index, see probeIndexByTables
+        char index_by;
+    }
+
+    private static ArrayDeque<ArgumentsRow> fetchArgumentsRows(ResultSet rs) throws SQLException {
+        ArrayDeque<ArgumentsRow> res = new ArrayDeque<>();
+        while (rs.next()) {
+            ArgumentsRow r = new ArgumentsRow();
+            r.owner = rs.getString("OWNER");
+            r.object_name = rs.getString("OBJECT_NAME");
+            r.package_name = rs.getString("PACKAGE_NAME");
+            r.argument_name = rs.getString("ARGUMENT_NAME");
+            r.position = rs.getInt("POSITION");
+            r.sequence = rs.getInt("SEQUENCE");
+            r.data_level = rs.getInt("DATA_LEVEL");
+            r.data_type = rs.getString("DATA_TYPE");
+            r.overload = rs.getInt("OVERLOAD");
+            if (rs.wasNull()) {
+                r.overload = -1; //just not null
+            }
+            r.in_out = rs.getString("IN_OUT");
+            r.type_owner = rs.getString("TYPE_OWNER");
+            r.type_name = rs.getString("TYPE_NAME");
+            r.type_subname = rs.getString("TYPE_SUBNAME");
+            r.pls_type = rs.getString("PLS_TYPE");
+            r.data_length = rs.getInt("DATA_LENGTH");
+            if (rs.wasNull()) {
+                r.data_length = 0;
+            }
+            r.object_id = rs.getLong("OBJECT_ID");
+            res.add(r);
+        }
+        return res;
+    }
+
+    private String argumentKey(String name) {
+        return this.downCasing && name != null ? name.toLowerCase() : name;
+    }
+
+    // get a Field from Args a and advance the internal position to the position
+    // after this Field.
+    // due to the recursive structure of PL/SQL types this method is recursive
+    private Field eatArg(ArrayDeque<ArgumentsRow> a) {
+        ArgumentsRow r = a.getFirst();
+        Field f = new Field();
+        f.name = r.argument_name;
+        if (r.data_type.equals("NUMBER")
+                || r.data_type.equals("DATE")
+                || r.data_type.equals("INTEGER")
+                || r.data_type.equals("PL/SQL BOOLEAN")
+                || r.data_type.equals("BINARY_INTEGER")) {
+            NamedType t = NamedType.create(r.data_type, this.exportDateAsString);
+            f.type = t;
+            a.pop();
+            return f;
+        }
+        if (r.data_type.equals("VARCHAR2")) {
+            Varchar2Type vt = new Varchar2Type();
+            vt.name = "VARCHAR2";
+            vt.size = r.data_length;
+            f.type = vt;
+            a.pop();
+            return f;
+        }
+        if (r.data_type.equals("RAW")) {
+            RawType vt = new RawType();
+            vt.name = "RAW";
+            vt.size = r.data_length;
+            f.type = vt;
+            a.pop();
+            return f;
+        }
+        if (r.data_type.equals("TABLE")) {
+            TableType t = new TableType();
+            t.owner = r.type_owner;
+            t.package_ = r.type_name;
+            t.name = r.type_subname;
+            a.pop();
+            Field f2 = eatArg(a);
+            t.slottype = f2.type;
+            f.type = t;
+            return f;
+        }
+        if (r.data_type.equals("PL/SQL RECORD")) {
+            RecordType t = new RecordType();
+            t.downCasing = this.downCasing;
+            t.owner = r.type_owner;
+            t.package_ = r.type_name;
+            t.name = r.type_subname;
+            t.fields = new ArrayList<>();
+            int level = r.data_level;
+            a.pop();
+            while (!a.isEmpty() && a.getFirst().data_level > level) {
+                t.fields.add(eatArg(a));
+            }
+            t.compile();
+            f.type = t;
+            if (t.isAnonymous()) {
+                throw new RuntimeException("anonymous record types (%rowtype) are not supported");
+            }
+            return f;
+        }
+        // as of Oracle 11.2.0.2.0 ref cursors can not be part of records or be
+        // part of a table
+        if (r.data_type.equals("REF CURSOR")) {
+            a.pop();
+            if (a.isEmpty() || a.getFirst().data_level == 0) {
+                SysRefCursorType t = new SysRefCursorType();
+                f.type = t;
+                return f;
+            }
+            TypedRefCursorType t = new TypedRefCursorType();
+            t.owner = r.type_owner;
+            t.package_ = r.type_name;
+            t.name = r.type_subname;
+            Field f2 = eatArg(a);
+            if (f2.type instanceof RecordType) {
+                t.rectype = (RecordType) f2.type;
+                if (t.rectype.isAnonymous()) {
+                    throw new RuntimeException("anonymous record types (%rowtype) are not supported for typed ref cursors");
+                }
+                f.type = t;
+                return f;
+            } else {
+                throw new RuntimeException("unknown record type for cursor");
+            }
+        }
+        if (r.data_type.equals("PL/SQL TABLE")) {
+            char tt = r.index_by;
+            if (tt == 'V') {
+                IndexByStringTableType t = new IndexByStringTableType();
+                t.owner = r.type_owner;
+                t.package_ = r.type_name;
+                t.name = r.type_subname;
+                a.pop();
+                Field f2 = eatArg(a);
+                t.slottype = f2.type;
+                f.type = t;
+                return f;
+            } else if (tt == 'I') {
+                IndexByIntegerTableType t = new IndexByIntegerTableType();
+                t.owner = r.type_owner;
+                t.package_ = r.type_name;
+                t.name = r.type_subname;
+                a.pop();
+                Field f2 = eatArg(a);
+                t.slottype = f2.type;
+                f.type = t;
+                return f;
+            } else {
+                throw new Error("BUG");
+            }
+        }
+        throw new RuntimeException("unsupported type: " + r.data_type);
+    }
+
+    private Procedure eatProc(ArrayDeque<ArgumentsRow> a) {
+        Procedure p = new Procedure();
+        ArgumentsRow r = a.getFirst();
+        p.package_ = r.package_name;
+        p.name = r.object_name;
+        p.overload = r.overload;
+        p.owner = r.owner;
+        p.object_id = r.object_id;
+        p.arguments = new ArrayList<>();
+        if (a.getFirst().data_type == null) {
+            // this is a procedure with no arguments
+            a.pop();
+            return p;
+        }
+        if (r.position == 0) {
+            // this a function the return type is the first argument, the 
+            // argument name is null
+            Field f = eatArg(a);
+            p.returnType = f.type;
+        }
+        while (!a.isEmpty() && a.getFirst().overload == p.overload
+                && a.getFirst().object_id == r.object_id
+                && a.getFirst().object_name.equals(p.name)) {
+            String io = a.getFirst().in_out;
+            Field f = eatArg(a);
+            Argument ar = new Argument();
+            ar.direction = io;
+            ar.name = f.name;
+            ar.key = argumentKey(f.name);
+            ar.type = f.type;
+            p.arguments.add(ar);
+        }
+        return p;
+    }
+
+    // the argument data, first the Types count the entries with countArgArrays,
+    // then allocate creates the arrays with the exact size and the Types
+    // fill them with fillArgArrays. The arrays are bound as they are.
+    static final class ArgArrays {
+
+        // marks null in decimal
+        private static final BigDecimal NULL_NUMBER = new BigDecimal(0);
+        // marks null in date
+        private static final long NULL_DATE = Long.MIN_VALUE;
+
+        int decimalCount = 0;
+        int varchar2Count = 0;
+        int dateCount = 0;
+        int rawCount = 0;
+
+        // integral numbers are stored in longs, all other numbers and null
+        // are stored in decimal. decimal is only allocated when needed
+        long[] longs;
+        BigDecimal[] decimal;
+        String[] varchar2;
+        long[] date;
+        byte[][] raw;
+
+        int posd = 0;
+        int posv = 0;
+        int posdate = 0;
+        int posr = 0;
+
+        public void allocate() {
+            this.longs = new long[this.decimalCount];
+            this.varchar2 = new String[this.varchar2Count];
+            this.date = new long[this.dateCount];
+            this.raw = new byte[this.rawCount][];
+        }
+
+        public void addNumber(long n) {
+            this.longs[this.posd] = n;
+            this.posd++;
+        }
+
+        private void addDecimal(BigDecimal d) {
+            if (this.decimal == null) {
+                this.decimal = new BigDecimal[this.longs.length];
+            }
+            this.decimal[this.posd] = d;
+            this.posd++;
+        }
+
+        public void addNumber(Number n) {
+            if (n == null) {
+                addDecimal(NULL_NUMBER);
+            } else if (n instanceof Integer) {
+                addNumber((long) (Integer) n);
+            } else if (n instanceof Long) {
+                addNumber((long) (Long) n);
+            } else if (n instanceof BigInteger) {
+                addDecimal(new BigDecimal((BigInteger) n));
+            } else if (n instanceof BigDecimal) {
+                addDecimal((BigDecimal) n);
+            } else if (n instanceof Double) {
+                addDecimal(BigDecimal.valueOf((Double) n));
+            } else {
+                throw new RuntimeException("unsupported number type");
+            }
+        }
+
+        public void addString(String s) {
+            this.varchar2[this.posv] = s;
+            this.posv++;
+        }
+
+        public void addDate(java.util.Date d) {
+            this.date[this.posdate] = d == null ? NULL_DATE : d.getTime();
+            this.posdate++;
+        }
+
+        public void addRaw(byte[] r) {
+            this.raw[this.posr] = r;
+            this.posr++;
+        }
+
+        // the elements of a table of varchar2, the caller checks them
+        public void addStrings(Object[] s) {
+            System.arraycopy(s, 0, this.varchar2, this.posv, s.length);
+            this.posv += s.length;
+        }
+
+        // the elements of a table of raw, the caller checks them
+        public void addRaws(Object[] r) {
+            System.arraycopy(r, 0, this.raw, this.posr, r.length);
+            this.posr += r.length;
+        }
+
+        // the numbers for binding, if all numbers are integral and not
+        // null this is the long[], otherwise a BigDecimal[]
+        public Object numbers() {
+            if (this.decimal == null) {
+                return this.longs;
+            }
+            BigDecimal[] res = this.decimal;
+            for (int i = 0; i < res.length; i++) {
+                if (res[i] == null) {
+                    res[i] = BigDecimal.valueOf(this.longs[i]);
+                } else if (res[i] == NULL_NUMBER) {
+                    res[i] = null;
+                }
+            }
+            return res;
+        }
+
+        public Timestamp[] dates() {
+            Timestamp[] res = new Timestamp[this.date.length];
+            for (int i = 0; i < res.length; i++) {
+                if (this.date[i] != NULL_DATE) {
+                    res[i] = new Timestamp(this.date[i]);
+                }
+            }
+            return res;
+        }
+    }
+
+    // the result data, the arrays are the ones returned by the JDBC driver
+    static final class ResArrays {
+
+        Object[] decimal;
+        Object[] varchar2;
+        Object[] date;
+        Object[] raw;
+
+        int posd = 0;
+        int posv = 0;
+        int posdate = 0;
+        int posr = 0;
+
+        public String readString() {
+            String res = (String) varchar2[posv];
+            posv++;
+            return res;
+        }
+
+        public BigDecimal readBigDecimal() {
+            BigDecimal res = (BigDecimal) decimal[posd];
+            posd++;
+            return res;
+        }
+
+        public java.util.Date readDate() {
+            Timestamp ts = (Timestamp) this.date[posdate];
+            posdate++;
+            if (ts == null) {
+                return null;
+            }
+            return new java.util.Date(ts.getTime());
+        }
+
+        public byte[] readRaw() {
+            byte[] res = (byte[]) raw[posr];
+            posr++;
+            return res;
+        }
+
+        // the next n values of a table of scalars, copied once: the
+        // ArrayList(Collection) constructor copies the array of the collection
+        private static ArrayList<Object> slice(Object[] a, int pos, int n) {
+            ArrayList<Object> res = new ArrayList<>(n);
+            for (int i = pos; i < pos + n; i++) {
+                res.add(a[i]);
+            }
+            return res;
+        }
+
+        public ArrayList<Object> readBigDecimals(int n) {
+            ArrayList<Object> res = slice(decimal, posd, n);
+            posd += n;
+            return res;
+        }
+
+        public ArrayList<Object> readStrings(int n) {
+            ArrayList<Object> res = slice(varchar2, posv, n);
+            posv += n;
+            return res;
+        }
+
+        public ArrayList<Object> readRaws(int n) {
+            ArrayList<Object> res = slice(raw, posr, n);
+            posr += n;
+            return res;
+        }
+    }
+
+    private static void genOffsets(StringBuilder sb) {
+        sb.append("o$.extend(4); o$(o$.last-3) := outn; o$(o$.last-2) := outv;")
+                .append(" o$(o$.last-1) := outd; o$(o$.last) := outr;\n");
+    }
+
+    // make room for n more values in the output array of kind k
+    private static void genReserve(StringBuilder sb, char k, String n) {
+        String a = "a" + k;
+        String out = "out" + k;
+        sb.append("if ").append(out).append(" + ").append(n).append(" > ").append(a).append(".count then ")
+                .append(a).append(".extend(").append(out).append(" + ").append(n).append(" - ")
+                .append(a).append(".count); end if;\n");
+    }
+
+    // append value to the output array of kind k (n, v, d or r). The output
+    // overwrites the input arrays, they are extended in chunks and trimmed
+    // to outn .. outr at the end
+    private static void genPut(StringBuilder sb, char k, String value) {
+        String a = "a" + k;
+        String out = "out" + k;
+        sb.append("if ").append(out).append(" = ").append(a).append(".count then ")
+                .append(a).append(".extend(greatest(").append(out).append(", 64)); end if;\n");
+        sb.append(out).append(" := ").append(out).append(" + 1; ")
+                .append(a).append("(").append(out).append(") := ").append(value).append(";\n");
+    }
+
+    // the variables of the blocks for p, the arrays, their positions and the
+    // parameters, with offsets also o$ for the start positions of the outputs
+    private void genDeclarations(StringBuilder sb, Procedure p, boolean offsets) {
+        sb.append("an " + this.numberTableName + ";\n");
+        sb.append("av " + this.varchar2TableName + " ;\n");
+        sb.append("ad " + this.dateTableName + ";\n");
+        sb.append("ar " + this.rawTableName + ";\n");
+        sb.append("inn pls_integer :=1;\n");
+        sb.append("inv pls_integer :=1;\n");
+        sb.append("ind pls_integer :=1;\n");
+        sb.append("inr pls_integer :=1;\n");
+        // the number of output values in the arrays
+        sb.append("outn pls_integer :=0;\n");
+        sb.append("outv pls_integer :=0;\n");
+        sb.append("outd pls_integer :=0;\n");
+        sb.append("outr pls_integer :=0;\n");
+        sb.append("size_ pls_integer;\n");
+        if (offsets) {
+            // the start positions of the output values in the four arrays,
+            // appended to an at the end, see LazyResult
+            sb.append("o$ " + this.numberTableName + " := " + this.numberTableName + "();\n");
+        }
+        if (p.returnType != null) {
+            sb.append("result$ ").append(p.returnType.plsqlName()).append(";\n");
+        }
+        for (int i = 0; i < p.arguments.size(); i++) {
+            sb.append("p" + i + "$ ").append(p.arguments.get(i).type.plsqlName());
+            sb.append(";\n");
+        }
+    }
+
+    private static void genCall(StringBuilder sb, Procedure p) {
+        if (p.returnType != null) {
+            sb.append("result$:=");
+        }
+        sb.append(p.call_name + "(");
+        for (int i = 0; i < p.arguments.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(" " + p.arguments.get(i).name + " => ");
+            sb.append("p" + i + "$");
+        }
+        sb.append(");\n");
+    }
+
+    // the block for a call of p, with offsets the start positions of the
+    // outputs are appended to the numbers, they are only needed for lazy
+    // results, see LazyLayout
+    private String createStatementString(Procedure p, boolean offsets) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("declare\n");
+        genDeclarations(sb, p, offsets);
+        sb.append("begin\n");
+        sb.append("an :=?;\n");
+        sb.append("av :=?;\n");
+        sb.append("ad :=?;\n");
+        sb.append("ar :=?;\n");
+        AtomicInteger counter = new AtomicInteger(0);
+        for (int i = 0; i < p.arguments.size(); i++) {
+            Argument a = p.arguments.get(i);
+            if (a.direction.equals("OUT")) {
+                continue;
+            }
+            a.type.genReadOutThing(sb, counter, "p" + i + "$");
+        }
+        // at this point the parameters have been filled, the output
+        // overwrites the parameter arrays, see genPut
+        // generate teh actual procedure call
+        genCall(sb, p);
+        // after the procedure call
+        if (p.returnType != null && !isCursor(p.returnType)) {
+            if (offsets) {
+                genOffsets(sb);
+            }
+            p.returnType.genWriteThing(sb, counter, "result$");
+        }
+        for (int i = 0; i < p.arguments.size(); i++) {
+            Argument a = p.arguments.get(i);
+            if (a.direction.equals("IN") || isCursor(a.type)) {
+                continue;
+            }
+            if (offsets) {
+                genOffsets(sb);
+            }
+            a.type.genWriteThing(sb, counter, "p" + i + "$");
+        }
+        sb.append("an.trim(an.count - outn); av.trim(av.count - outv);")
+                .append(" ad.trim(ad.count - outd); ar.trim(ar.count - outr);\n");
+        if (offsets) {
+            sb.append("an.extend(o$.count);\n");
+            sb.append("for i in 1 .. o$.count loop an(outn + i) := o$(i); end loop;\n");
+        }
+        sb.append("?:= an;\n");
+        sb.append("?:= av;\n");
+        sb.append("?:= ad;\n");
+        sb.append("?:= ar;\n");
+        // the cursors are read by JDBC, in the order of cursorTypes
+        if (p.returnType != null && isCursor(p.returnType)) {
+            sb.append("?:= result$;\n");
+        }
+        for (int i = 0; i < p.arguments.size(); i++) {
+            Argument a = p.arguments.get(i);
+            if (isOutCursor(a)) {
+                sb.append("?:= p" + i + "$;\n");
+            }
+        }
+        sb.append("end;\n");
+        return sb.toString();
+    }
+
+    // the block for callBatch: the first number is the count of calls, then
+    // the arguments of each call. All calls are done before the outputs are
+    // written, because the outputs overwrite the arguments. Each call has a
+    // savepoint, if it fails its changes are rolled back and the error is
+    // returned instead of its outputs. The outputs of a call are: the error
+    // code (0 if ok), then the message or the return value and OUT arguments
+    private String createBatchStatementString(Procedure p) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("declare\n");
+        genDeclarations(sb, p, false);
+        sb.append("n$ pls_integer;\n");
+        // the outputs of the calls by call number
+        sb.append("type e$t is table of number index by pls_integer;\n");
+        sb.append("e$ e$t;\n");
+        sb.append("type m$t is table of varchar2(4000) index by pls_integer;\n");
+        sb.append("m$ m$t;\n");
+        if (p.returnType != null) {
+            sb.append("type result$t is table of ").append(p.returnType.plsqlName()).append(" index by pls_integer;\n");
+            sb.append("result$a result$t;\n");
+        }
+        for (int i = 0; i < p.arguments.size(); i++) {
+            Argument a = p.arguments.get(i);
+            // never assigned, resets the parameter before each call
+            sb.append("p" + i + "$0 ").append(a.type.plsqlName()).append(";\n");
+            if (!a.direction.equals("IN")) {
+                sb.append("type p" + i + "$t is table of ").append(a.type.plsqlName()).append(" index by pls_integer;\n");
+                sb.append("p" + i + "$a p" + i + "$t;\n");
+            }
+        }
+        sb.append("begin\n");
+        sb.append("an :=?;\n");
+        sb.append("av :=?;\n");
+        sb.append("ad :=?;\n");
+        sb.append("ar :=?;\n");
+        sb.append("n$ := an(inn); inn := inn+1;\n");
+        sb.append("for b$ in 1 .. n$ loop\n");
+        AtomicInteger counter = new AtomicInteger(0);
+        for (int i = 0; i < p.arguments.size(); i++) {
+            Argument a = p.arguments.get(i);
+            sb.append("p" + i + "$ := p" + i + "$0;\n");
+            if (!a.direction.equals("OUT")) {
+                a.type.genReadOutThing(sb, counter, "p" + i + "$");
+            }
+        }
+        sb.append("savepoint batch$call;\n");
+        sb.append("begin\n");
+        genCall(sb, p);
+        if (p.returnType != null) {
+            sb.append("result$a(b$) := result$;\n");
+        }
+        for (int i = 0; i < p.arguments.size(); i++) {
+            if (!p.arguments.get(i).direction.equals("IN")) {
+                sb.append("p" + i + "$a(b$) := p" + i + "$;\n");
+            }
+        }
+        sb.append("e$(b$) := 0;\n");
+        sb.append("exception when others then\n");
+        sb.append("e$(b$) := sqlcode;\n");
+        sb.append("m$(b$) := substr(sqlerrm, 1, 4000);\n");
+        sb.append("begin\n");
+        sb.append("rollback to savepoint batch$call;\n");
+        // the call committed, there is nothing to roll back
+        sb.append("exception when others then null;\n");
+        sb.append("end;\n");
+        sb.append("end;\n");
+        sb.append("end loop;\n");
+        sb.append("for b$ in 1 .. n$ loop\n");
+        genPut(sb, 'n', "e$(b$)");
+        sb.append("if e$(b$) <> 0 then\n");
+        genPut(sb, 'v', "m$(b$)");
+        sb.append("else\n");
+        if (p.returnType != null) {
+            p.returnType.genWriteThing(sb, counter, "result$a(b$)");
+        }
+        for (int i = 0; i < p.arguments.size(); i++) {
+            Argument a = p.arguments.get(i);
+            if (!a.direction.equals("IN")) {
+                a.type.genWriteThing(sb, counter, "p" + i + "$a(b$)");
+            }
+        }
+        sb.append("end if;\n");
+        sb.append("end loop;\n");
+        sb.append("an.trim(an.count - outn); av.trim(av.count - outv);")
+                .append(" ad.trim(ad.count - outd); ar.trim(ar.count - outr);\n");
+        sb.append("?:= an;\n");
+        sb.append("?:= av;\n");
+        sb.append("?:= ad;\n");
+        sb.append("?:= ar;\n");
+        sb.append("end;\n");
+        return sb.toString();
+    }
+
+    // the generated blocks are kept in the explicit statement cache of the
+    // connection, the key is the block itself. The cache belongs to the
+    // connection, so it is still used if a new ProcedureCaller is created
+    // for the same connection. The settings of the connection are not
+    // changed, they outlive the ProcedureCaller if the connection is pooled.
+    private boolean reuseStatements = true;
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    /**
+     * @return true if the statements are reused
+     */
+    public boolean getReuseStatements() {
+        return reuseStatements;
+    }
+
+    /**
+     * If set and explicit statement caching is enabled on the connection,
+     * see OracleConnection.setExplicitCachingEnabled, the prepared
+     * statements for the generated blocks are kept in this cache and
+     * reused. Otherwise the statement for each call is prepared and closed.
+     *
+     * @param reuseStatements reuse statements or not
+     */
+    public void setReuseStatements(boolean reuseStatements) {
+        this.reuseStatements = reuseStatements;
+    }
+
+    /**
+     * @return the number of calls which reused a prepared statement
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * @return the number of calls which had to prepare the statement
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    private boolean useStatementCache() throws SQLException {
+        return this.reuseStatements && this.connection.getExplicitCachingEnabled();
+    }
+
+    private OracleCallableStatement prepareCall(String sql) throws SQLException {
+        if (useStatementCache()) {
+            CallableStatement cstm = this.connection.getCallWithKey(sql);
+            if (cstm != null) {
+                this.statementCacheHits.incrementAndGet();
+                return (OracleCallableStatement) cstm;
+            }
+            this.statementCacheMisses.incrementAndGet();
+        }
+        return (OracleCallableStatement) this.connection.prepareCall(sql);
+    }
+
+    private void releaseCall(OracleCallableStatement cstm, String sql) throws SQLException {
+        if (useStatementCache()) {
+            // the cache keeps the bound values, these can be large arrays
+            cstm.clearParameters();
+            cstm.closeWithKey(sql);
+        } else {
+            cstm.close();
+        }
+    }
+
+    // executes the procedure and reads the result arrays, the statement
+    // is returned open so that the OUT cursors can be read from it
+    private OracleCallableStatement executeProcedure(
+            Procedure proc,
+            ArgArrays argsArrays,
+            ResArrays resultArrays) // used as out parameter, should be empty
+            throws SQLException {
+        return executeProcedure(proc.plsqlstatement, cursorTypes(proc).size(), argsArrays, resultArrays);
+    }
+
+    // execute the block sql which binds ncursors cursors after the four arrays
+    private OracleCallableStatement executeProcedure(
+            String sql,
+            int ncursors,
+            ArgArrays argsArrays,
+            ResArrays resultArrays) // used as out parameter, should be empty
+            throws SQLException {
+        if (this.effectiveNumberTableName == null) {
+            this.effectiveNumberTableName = computeEffectiveName(this.numberTableName);
+        }
+        if (this.effectiveVarchar2TableName == null) {
+            this.effectiveVarchar2TableName = computeEffectiveName(this.varchar2TableName);
+        }
+        if (this.effectiveDateTableName == null) {
+            this.effectiveDateTableName = computeEffectiveName(this.dateTableName);
+        }
+        if (this.effectiveRawTableName == null) {
+            this.effectiveRawTableName = computeEffectiveName(this.rawTableName);
+        }
+        OracleCallableStatement cstm = prepareCall(sql);
+        boolean ok = false;
+        try {
+
+            cstm.setArray(1, this.connection.createOracleArray(this.effectiveNumberTableName, argsArrays.numbers()));
+            cstm.setArray(2, this.connection.createOracleArray(this.effectiveVarchar2TableName, argsArrays.varchar2));
+            cstm.setArray(3, this.connection.createOracleArray(this.effectiveDateTableName, argsArrays.dates()));
+            cstm.setArray(4, this.connection.createOracleArray(this.effectiveRawTableName, argsArrays.raw));
+
+            cstm.registerOutParameter(5, OracleTypes.ARRAY, this.effectiveNumberTableName);
+            cstm.registerOutParameter(6, OracleTypes.ARRAY, this.effectiveVarchar2TableName);
+            cstm.registerOutParameter(7, OracleTypes.ARRAY, this.effectiveDateTableName);
+            cstm.registerOutParameter(8, OracleTypes.ARRAY, this.effectiveRawTableName);
+            for (int j = 9; j < 9 + ncursors; j++) {
+                cstm.registerOutParameter(j, OracleTypes.CURSOR);
+            }
+            cstm.execute();
+            resultArrays.decimal = (Object[]) cstm.getArray(5).getArray();
+            resultArrays.varchar2 = (Object[]) cstm.getArray(6).getArray();
+            resultArrays.date = (Object[]) cstm.getArray(7).getArray();
+            resultArrays.raw = (Object[]) cstm.getArray(8).getArray();
+            ok = true;
+            return cstm;
+        } finally {
+            if (!ok) {
+                releaseCall(cstm, sql);
+            }
+        }
+    }
+
+    private static boolean isOutCursor(Argument a) {
+        return a.direction.equals("OUT") && isCursor(a.type);
+    }
+
+    // the types of the cursors bound after the four arrays: the return
+    // value if it is a cursor and the OUT cursor arguments
+    private static ArrayList<Type> cursorTypes(Procedure proc) {
+        ArrayList<Type> l = new ArrayList<>();
+        if (proc.returnType != null && isCursor(proc.returnType)) {
+            l.add(proc.returnType);
+        }
+        for (Argument a : proc.arguments) {
+            if (isOutCursor(a)) {
+                l.add(a.type);
+            }
+        }
+        return l;
+    }
+
+    private void callProcedure(
+            Procedure proc,
+            ArgArrays argsArrays,
+            ResArrays resultArrays, // used as out parameter, should be empty
+            ArrayList<ArrayList<Map<String, Object>>> outCursors) // used as out parameter, should be empty
+            throws SQLException {
+        callProcedure(proc, proc.plsqlstatement, argsArrays, resultArrays, outCursors);
+    }
+
+    // sql is the block for proc, see createStatementString
+    private void callProcedure(
+            Procedure proc,
+            String sql,
+            ArgArrays argsArrays,
+            ResArrays resultArrays,
+            ArrayList<ArrayList<Map<String, Object>>> outCursors)
+            throws SQLException {
+        ArrayList<Type> types = cursorTypes(proc);
+        RowMap.Keys[] keys = new RowMap.Keys[types.size()];
+        for (int j = 0; j < keys.length; j++) {
+            keys[j] = cursorKeys(types.get(j));
+        }
+        callBlock(sql, keys, cursorStats(proc, keys.length), argsArrays, resultArrays, outCursors);
+    }
+
+    // execute the block sql and read its cursors, for each cursor there is
+    // an element in cursorKeys (the keys of the rows, null for a
+    // sys_refcursor) and in stats
+    void callBlock(
+            String sql,
+            RowMap.Keys[] cursorKeys,
+            CursorStats[] stats,
+            ArgArrays argsArrays,
+            ResArrays resultArrays,
+            ArrayList<ArrayList<Map<String, Object>>> outCursors)
+            throws SQLException {
+        OracleCallableStatement cstm = executeProcedure(sql, cursorKeys.length, argsArrays, resultArrays);
+        AtomicInteger trips = new AtomicInteger(1);
+        try {
+            int defaultFetchSize = cursorKeys.length == 0 ? 0 : this.connection.getDefaultRowPrefetch();
+            for (int j = 0; j < cursorKeys.length; j++) {
+                try (ResultSet rs = cstm.getCursor(j + 9)) {
+                    int fs = fetchSize(stats[j]);
+                    if (fs > 0) {
+                        rs.setFetchSize(fs);
+                    }
+                    ArrayList<Map<String, Object>> rows = readSysRefCursor(this.exportDateAsString, this.downCasing,
+                            this.cursorFetchSize, defaultFetchSize, cursorKeys[j], rs, trips);
+                    stats[j].record(rows.size(), averageRowWidth(rows));
+                    outCursors.add(rows);
+                }
+            }
+        } finally {
+            releaseCall(cstm, sql);
+            this.lastRoundTrips.set(trips.get());
+            this.roundTrips.addAndGet(trips.get());
+        }
+    }
+
+    private static CursorStats[] cursorStats(Procedure proc, int n) {
+        CursorStats[] stats = proc.cursorStats;
+        if (stats == null) {
+            stats = new CursorStats[n];
+            for (int i = 0; i < n; i++) {
+                stats[i] = new CursorStats();
+            }
+            proc.cursorStats = stats;
+        }
+        return stats;
+    }
+
+    // the fetch size for a cursor: the fixed one if set, otherwise large
+    // enough for the rows seen before, but at most cursorFetchMemory bytes
+    private int fetchSize(CursorStats st) {
+        if (this.cursorFetchSize > 0) {
+            return this.cursorFetchSize;
+        }
+        if (this.cursorFetchMemory <= 0 || st.rows < 0) {
+            return 0;
+        }
+        // one more row, so that the end of the cursor is seen in the same fetch
+        double n = Math.ceil(st.rows) + 1;
+        double byMemory = Math.floor(this.cursorFetchMemory / Math.max(1, st.rowBytes));
+        return (int) Math.max(1, Math.min(Math.min(n, byMemory), Integer.MAX_VALUE));
+    }
+
+    private long cursorFetchMemory = 1 << 20;
+
+    /**
+     * @return the memory for the rows of one fetch of a cursor
+     */
+    public long getCursorFetchMemory() {
+        return cursorFetchMemory;
+    }
+
+    /**
+     * If no fetch size is set, the fetch size of a cursor is chosen from the
+     * number of rows and the row widths seen for this cursor in earlier calls
+     * of the procedure. The rows of one fetch should need at most
+     * cursorFetchMemory bytes. 0 uses the default of the driver.
+     *
+     * @param cursorFetchMemory the memory in bytes
+     */
+    public void setCursorFetchMemory(long cursorFetchMemory) {
+        if (cursorFetchMemory < 0) {
+            throw new IllegalArgumentException("the fetch memory must not be negative");
+        }
+        this.cursorFetchMemory = cursorFetchMemory;
+    }
+
+    // atomic, RowCursors and callAsync update them on other threads
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicInteger lastRoundTrips = new AtomicInteger();
+
+    /**
+     * The round trips are the execution of the call and the fetches of the
+     * rows of the cursors. The fetches are not measured, they are estimated
+     * from the number of rows and the fetch size, or the default row
+     * prefetch of the connection.
+     *
+     * @return the estimated number of round trips of all calls
+     */
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * @return the estimated number of round trips of the last call, for
+     * callStreaming without the fetches of the cursors
+     */
+    public int getLastRoundTrips() {
+        return lastRoundTrips.get();
+    }
+
+    private int cursorFetchSize = 0;
+
+    /**
+     * @return the fetch size for ref cursors, 0 if the driver default is used
+     */
+    public int getCursorFetchSize() {
+        return cursorFetchSize;
+    }
+
+    /**
+     * Set the number of rows fetched in one round trip when the rows of an
+     * OUT ref cursor are read. 0 means the default of the driver.
+     *
+     * @param cursorFetchSize the fetch size
+     */
+    public void setCursorFetchSize(int cursorFetchSize) {
+        if (cursorFetchSize < 0) {
+            throw new IllegalArgumentException("the fetch size must not be negative");
+        }
+        this.cursorFetchSize = cursorFetchSize;
+    }
+
+    private boolean generateMarshallers = false;
+    private static final AtomicInteger marshallerCounter = new AtomicInteger(0);
+
+    /**
+     * @return true if marshallers are generated for the procedures
+     */
+    public boolean getGenerateMarshallers() {
+        return generateMarshallers;
+    }
+
+    /**
+     * If set, on the first call of a procedure with named arguments a Java
+     * class is generated and compiled which converts the arguments and
+     * results of exactly this procedure. This needs the Java compiler, i.e.
+     * a JDK, and Java 15 or later. If the class can not be generated the
+     * procedure is converted as usual, this is logged as a warning to the
+     * java.util.logging logger spinat.javaplsql.ProcedureCaller, see also
+     * getMarshallerFailure.
+     *
+     * @param generateMarshallers generate marshallers or not
+     */
+    public void setGenerateMarshallers(boolean generateMarshallers) {
+        this.generateMarshallers = generateMarshallers;
+    }
+
+    /**
+     * @param name the name of a procedure or function which is not overloaded
+     * @return the reason why the marshaller for the procedure could not be
+     * generated, null if it was generated or not yet tried
+     * @throws SQLException
+     */
+    public Throwable getMarshallerFailure(String name) throws SQLException {
+        return singleProcedure(name).marshallerFailure;
+    }
+
+    // for tests: true if the marshaller for the procedure was generated
+    boolean hasMarshaller(String name) throws SQLException {
+        return singleProcedure(name).marshaller != null;
+    }
+
+    // the marshaller for the procedure or null if it can not be generated,
+    // the marshaller is stored in the procedure and shared like the procedure
+    private static Marshaller getMarshaller(Procedure p) {
+        Marshaller m = p.marshaller;
+        if (m != null || p.marshallerFailure != null) {
+            return m;
+        }
+        p.marshallerLock.lock();
+        try {
+            if (p.marshaller == null && p.marshallerFailure == null) {
+                try {
+                    String className = "GeneratedMarshaller" + marshallerCounter.incrementAndGet();
+                    JavaGen gen = new JavaGen();
+                    Class<?> c = MarshallerCompiler.compile(ProcedureCaller.class.getPackage().getName()
+                            + "." + className, genMarshallerSource(p, className, gen));
+                    Marshaller m2 = (Marshaller) c.getDeclaredConstructor().newInstance();
+                    m2.c = gen.constants.toArray();
+                    p.marshaller = m2;
+                } catch (Exception | LinkageError e) {
+                    p.marshallerFailure = e;
+                    logMarshallerFailure(p, e);
+                }
+            }
+            return p.marshaller;
+        } finally {
+            p.marshallerLock.unlock();
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger(ProcedureCaller.class.getName());
+    private static final AtomicBoolean unsupportedLogged = new AtomicBoolean(false);
+
+    // if marshallers can not be generated at all, e.g. without a JDK, this
+    // is logged once, other failures for each procedure
+    private static void logMarshallerFailure(Procedure p, Throwable e) {
+        if (!(e instanceof UnsupportedOperationException)) {
+            logger.log(Level.WARNING, "could not generate a marshaller for " + p.call_name
+                    + ", it is converted as usual", e);
+        } else if (unsupportedLogged.compareAndSet(false, true)) {
+            logger.log(Level.WARNING, "marshallers can not be generated, procedures are converted as usual: "
+                    + e.getMessage());
+        }
+    }
+
+    // the Java source for the marshaller of procedure p, the same as call(Procedure, Map)
+    static String genMarshallerSource(Procedure p, String className, JavaGen gen) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(ProcedureCaller.class.getPackage().getName()).append(";\n");
+        sb.append("final class ").append(className).append(" extends ProcedureCaller.Marshaller {\n");
+        genMarshallerMethods(sb, p, gen, "", "");
+        sb.append(gen.helpers);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    // arguments per generated method, a procedure with more arguments gets
+    // part methods, otherwise the methods could exceed the 8000 bytes up to
+    // which the JIT compiles a method
+    private static final int MARSHALLER_PART_SIZE = 32;
+
+    // the methods count, fill and read of a marshaller for p, their names
+    // end with suffix and they start with modifiers, for many arguments
+    // they call the methods countPartK, fillPartK and readPartK
+    private static void genMarshallerMethods(StringBuilder sb, Procedure p, JavaGen gen,
+            String modifiers, String suffix) {
+        ArrayList<Argument> ins = new ArrayList<>();
+        ArrayList<Argument> outs = new ArrayList<>();
+        for (Argument arg : p.arguments) {
+            if (!arg.direction.equals("OUT")) {
+                ins.add(arg);
+            }
+            if (!arg.direction.equals("IN")) {
+                outs.add(arg);
+            }
+        }
+        String argsParams = "(java.util.Map<String, Object> args, ProcedureCaller.ArgArrays a)";
+        StringBuilder parts = new StringBuilder();
+        sb.append(modifiers).append("void count").append(suffix).append(argsParams).append(" {\n");
+        genParts(sb, parts, ins, modifiers + "void ", "countPart", suffix, argsParams, "(args, a);\n",
+                (code, list) -> {
+                    for (Argument arg : list) {
+                        String x = gen.newVar();
+                        code.append("Object ").append(x).append(" = args.get(").append(javaString(arg.key)).append(");\n");
+                        arg.type.genJavaCount(code, gen, x);
+                    }
+                });
+        sb.append("}\n");
+        sb.append(modifiers).append("void fill").append(suffix).append(argsParams).append(" {\n");
+        genParts(sb, parts, ins, modifiers + "void ", "fillPart", suffix, argsParams, "(args, a);\n",
+                (code, list) -> {
+                    for (Argument arg : list) {
+                        String x = gen.newVar();
+                        String key = javaString(arg.key);
+                        code.append("Object ").append(x).append(" = args.get(").append(key).append(");\n");
+                        code.append("if (").append(x).append(" == null && !args.containsKey(").append(key).append(")) {\n");
+                        code.append("throw new ProcedureCaller.ConversionException(")
+                                .append(javaString("could not find argument " + arg.name)).append(");\n");
+                        code.append("}\n");
+                        arg.type.genJavaFill(code, gen, x);
+                    }
+                });
+        sb.append("}\n");
+        String cursorsParam = "java.util.ArrayList<java.util.ArrayList<java.util.Map<String, Object>>> cursors";
+        sb.append(modifiers).append("java.util.Map<String, Object> read").append(suffix)
+                .append("(ProcedureCaller.ResArrays r, ").append(cursorsParam).append(") {\n");
+        sb.append("java.util.HashMap<String, Object> res = new java.util.HashMap<>();\n");
+        if (p.returnType != null) {
+            String x = gen.newVar();
+            sb.append("Object ").append(x).append(";\n");
+            p.returnType.genJavaRead(sb, gen, x);
+            sb.append("res.put(\"RETURN\", ").append(x).append(");\n");
+        }
+        genParts(sb, parts, outs, modifiers + "void ", "readPart", suffix,
+                "(ProcedureCaller.ResArrays r, " + cursorsParam + ", java.util.HashMap<String, Object> res)",
+                "(r, cursors, res);\n",
+                (code, list) -> {
+                    for (Argument arg : list) {
+                        String x = gen.newVar();
+                        code.append("Object ").append(x).append(";\n");
+                        arg.type.genJavaRead(code, gen, x);
+                        code.append("res.put(").append(javaString(arg.key)).append(", ").append(x).append(");\n");
+                    }
+                });
+        sb.append("return res;\n");
+        sb.append("}\n");
+        sb.append(parts);
+    }
+
+    // the code for the arguments in list, inline or, if there are too many,
+    // as calls to the methods name + k + suffix which are added to parts
+    private static void genParts(StringBuilder sb, StringBuilder parts, List<Argument> list,
+            String modifiers, String name, String suffix, String params, String callArgs,
+            BiConsumer<StringBuilder, List<Argument>> gen) {
+        if (list.size() <= MARSHALLER_PART_SIZE) {
+            gen.accept(sb, list);
+            return;
+        }
+        for (int i = 0, k = 1; i < list.size(); i += MARSHALLER_PART_SIZE, k++) {
+            sb.append(name).append(k).append(suffix).append(callArgs);
+            parts.append(modifiers).append(name).append(k).append(suffix).append(params).append(" {\n");
+            gen.accept(parts, list.subList(i, Math.min(list.size(), i + MARSHALLER_PART_SIZE)));
+            parts.append("}\n");
+        }
+    }
+
+    private static ArgArrays mapArgArrays(Procedure proc, Map<String, Object> args) {
+        ArgArrays argArrays = new ArgArrays();
+        countMapArgs(proc, argArrays, args);
+        argArrays.allocate();
+        fillMapArgs(proc, argArrays, args);
+        return argArrays;
+    }
+
+    private static void countMapArgs(Procedure proc, ArgArrays argArrays, Map<String, Object> args) {
+        for (Argument arg : proc.arguments) {
+            if (arg.direction.equals("OUT")) {
+                continue;
+            }
+            arg.type.countArgArrays(argArrays, args.get(arg.key));
+        }
+    }
+
+    private static void fillMapArgs(Procedure proc, ArgArrays argArrays, Map<String, Object> args) {
+        for (Argument arg : proc.arguments) {
+            if (arg.direction.equals("OUT")) {
+                continue;
+            }
+            if (args.containsKey(arg.key)) {
+                Object o = args.get(arg.key);
+                arg.type.fillArgArrays(argArrays, o);
+            } else {
+                throw new ConversionException("could not find argument " + arg.name);
+            }
+        }
+    }
+
+    private boolean lazyResults = false;
+
+    /**
+     * @return true if the results of calls with named arguments are decoded
+     * when they are accessed
+     */
+    public boolean getLazyResults() {
+        return lazyResults;
+    }
+
+    /**
+     * If set, the Map returned by a call with named arguments decodes each
+     * OUT parameter and the return value when it is accessed the first
+     * time. The Map can not be changed.
+     *
+     * @param lazyResults decode results lazily or not
+     */
+    public void setLazyResults(boolean lazyResults) {
+        this.lazyResults = lazyResults;
+    }
+
+    // the outputs of a procedure for LazyResult, computed once per procedure
+    private static final class LazyLayout {
+
+        // the block, it appends the start positions of the outputs
+        final String plsqlstatement;
+        // "RETURN" and the keys of the OUT and IN OUT arguments
+        final RowMap.Keys keys;
+        // the types of the outputs, null for cursors read by JDBC
+        final Type[] types;
+        // the number of outputs in the arrays, i.e. not cursors
+        final int arrayOutputs;
+
+        LazyLayout(Procedure proc, String plsqlstatement) {
+            this.plsqlstatement = plsqlstatement;
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<Type> tl = new ArrayList<>();
+            int n = 0;
+            if (proc.returnType != null) {
+                names.add("RETURN");
+                if (isCursor(proc.returnType)) {
+                    tl.add(null);
+                } else {
+                    tl.add(proc.returnType);
+                    n++;
+                }
+            }
+            for (Argument arg : proc.arguments) {
+                if (arg.direction.equals("IN")) {
+                    continue;
+                }
+                names.add(arg.key);
+                if (isCursor(arg.type)) {
+                    tl.add(null);
+                } else {
+                    tl.add(arg.type);
+                    n++;
+                }
+            }
+            this.keys = new RowMap.Keys(names);
+            this.types = tl.toArray(new Type[0]);
+            this.arrayOutputs = n;
+        }
+    }
+
+    // the result of a call with lazy results. The generated block appends the
+    // start positions of each output in the four arrays to the number array,
+    // so an output is decoded without decoding the outputs before it
+    private static final class LazyResult extends AbstractMap<String, Object> {
+
+        final LazyLayout layout;
+        final ResArrays ra;
+        // index of the position of output k in ra.decimal
+        final int[] offsets;
+        final Object[] values;
+        final boolean[] decoded;
+
+        LazyResult(LazyLayout layout, ResArrays ra, ArrayList<ArrayList<Map<String, Object>>> outCursors) {
+            this.layout = layout;
+            this.ra = ra;
+            int n = layout.types.length;
+            this.values = new Object[n];
+            this.decoded = new boolean[n];
+            this.offsets = new int[n];
+            int base = ra.decimal.length - 4 * layout.arrayOutputs;
+            for (int i = 0; i < n; i++) {
+                if (layout.types[i] == null) {
+                    this.values[i] = outCursors.remove(0);
+                    this.decoded[i] = true;
+                } else {
+                    this.offsets[i] = base;
+                    base += 4;
+                }
+            }
+        }
+
+        private Object value(int i) {
+            if (!this.decoded[i]) {
+                ResArrays r = new ResArrays();
+                r.decimal = this.ra.decimal;
+                r.varchar2 = this.ra.varchar2;
+                r.date = this.ra.date;
+                r.raw = this.ra.raw;
+                int k = this.offsets[i];
+                r.posd = ((BigDecimal) this.ra.decimal[k]).intValue();
+                r.posv = ((BigDecimal) this.ra.decimal[k + 1]).intValue();
+                r.posdate = ((BigDecimal) this.ra.decimal[k + 2]).intValue();
+                r.posr = ((BigDecimal) this.ra.decimal[k + 3]).intValue();
+                this.values[i] = this.layout.types[i].readFromResArrays(r);
+                this.decoded[i] = true;
+            }
+            return this.values[i];
+        }
+
+        @Override
+        public int size() {
+            return this.values.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return this.layout.keys.index.containsKey(key);
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer i = this.layout.keys.index.get(key);
+            return i == null ? null : value(i);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.i < values.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            if (this.i >= values.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, Object> e = new AbstractMap.SimpleImmutableEntry<>(
+                                    layout.keys.keys[this.i], value(this.i));
+                            this.i++;
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return values.length;
+                }
+            };
+        }
+    }
+
+    Map<String, Object> call(
+            Procedure proc, Map<String, Object> args) throws SQLException {
+        return call(proc, this.generateMarshallers ? getMarshaller(proc) : null, this.lazyResults, args);
+    }
+
+    // m is the marshaller for proc or null, lazy returns a LazyResult
+    private Map<String, Object> call(
+            Procedure proc, Marshaller m, boolean lazy, Map<String, Object> args) throws SQLException {
+        final ArgArrays argArrays;
+        if (m != null) {
+            argArrays = new ArgArrays();
+            m.count(args, argArrays);
+            argArrays.allocate();
+            m.fill(args, argArrays);
+        } else {
+            argArrays = mapArgArrays(proc, args);
+        }
+        ResArrays ra = new ResArrays();
+        final ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
+        if (lazy) {
+            LazyLayout layout = lazyLayout(proc);
+            callProcedure(proc, layout.plsqlstatement, argArrays, ra, outCursors);
+            return new LazyResult(layout, ra, outCursors);
+        }
+        callProcedure(proc, argArrays, ra, outCursors);
+        if (m != null) {
+            return m.read(ra, outCursors);
+        }
+        return readResults(proc, ra, outCursors);
+    }
+
+    private LazyLayout lazyLayout(Procedure proc) {
+        LazyLayout layout = proc.lazyLayout;
+        if (layout == null) {
+            layout = new LazyLayout(proc, createStatementString(proc, true));
+            proc.lazyLayout = layout;
+        }
+        return layout;
+    }
+
+    // convert result array to result, the cursors are removed from outCursors
+    private static HashMap<String, Object> readResults(Procedure proc, ResArrays ra,
+            ArrayList<ArrayList<Map<String, Object>>> outCursors) {
+        HashMap<String, Object> res = new HashMap<>();
+        if (proc.returnType != null) {
+            final Object o;
+            if (isCursor(proc.returnType)) {
+                o = outCursors.remove(0);
+            } else {
+                o = proc.returnType.readFromResArrays(ra);
+            }
+            res.put("RETURN", o);
+        }
+        for (Argument arg : proc.arguments) {
+            if (arg.direction.equals("IN")) {
+                continue;
+            }
+            final Object o;
+            if (isCursor(arg.type)) {
+                o = outCursors.get(0);
+                outCursors.remove(0);
+            } else {
+                o = arg.type.readFromResArrays(ra);
+            }
+            res.put(arg.key, o);
+        }
+        return res;
+    }
+
+    // call the procedure, for each parameter there must be an entry in Object
+    private Object callPositional(Procedure proc, Object[] args) throws SQLException {
+        if (proc.arguments.size() > args.length) {
+            throw new RuntimeException("not enough arguments supplied");
+        }
+        if (proc.arguments.size() < args.length) {
+            throw new RuntimeException("too many arguments supplied");
+        }
+        ArgArrays aa = new ArgArrays();
+        for (int i = 0; i < args.length; i++) {
+            Argument arg = proc.arguments.get(i);
+            if (!arg.direction.equals("OUT")) {
+                Object o = args[i];
+                if (o instanceof Box) {
+                    o = ((Box) o).value;
+                }
+                arg.type.countArgArrays(aa, o);
+            }
+        }
+        aa.allocate();
+        {
+            int i = 0;
+            for (Argument arg : proc.arguments) {
+                if (!arg.direction.equals("OUT")) {
+                    Object o = args[i];
+                    if (o instanceof Box) {
+                        o = ((Box) o).value;
+                    }
+                    arg.type.fillArgArrays(aa, o);
+                }
+                i++;
+            }
+        }
+        ResArrays ra = new ResArrays();
+        final ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
+        callProcedure(proc, aa, ra, outCursors);
+
+        // convert res array and to result and out parameters
+        Object result;
+        if (proc.returnType != null && isCursor(proc.returnType)) {
+            result = outCursors.remove(0);
+        } else if (proc.returnType != null) {
+            result = proc.returnType.readFromResArrays(ra);
+        } else {
+            result = null;
+        }
+        {
+            int i = 0;
+            for (Argument arg : proc.arguments) {
+                if (!arg.direction.equals("IN")) {
+
+                    if (args[i] != null && args[i] instanceof Box) {
+                        final Object o;
+                        if (isCursor(arg.type)) {
+                            o = outCursors.get(0);
+                            outCursors.remove(0);
+                        } else {
+                            o = arg.type.readFromResArrays(ra);
+                        }
+                        @SuppressWarnings("unchecked")
+                        Box<Object> b = (Box<Object>) args[i];
+                        b.value = o;
+                    } else {
+                        throw new RuntimeException("need a box for parameter " + arg.name);
+                    }
+                }
+                i++;
+            }
+        }
+        return result;
+    }
+
+    private static String sql1 = "select OWNER,OBJECT_NAME,PACKAGE_NAME,ARGUMENT_NAME,\n"
+            + "POSITION,SEQUENCE,DATA_LEVEL,DATA_TYPE,\n"
+            + " OVERLOAD, IN_OUT, TYPE_OWNER, TYPE_NAME, TYPE_SUBNAME, PLS_TYPE,data_length,object_id\n"
+            + " from all_arguments \n"
+            + " where owner = ? and package_name = ? and object_name = ?\n"
+            + " order by owner,package_name,object_name,overload,sequence";
+
+    private static String sql2 = "select OWNER,OBJECT_NAME,PACKAGE_NAME,ARGUMENT_NAME,"
+            + "POSITION,SEQUENCE,DATA_LEVEL,DATA_TYPE,"
+            + " OVERLOAD, IN_OUT, TYPE_OWNER, TYPE_NAME, TYPE_SUBNAME, PLS_TYPE,data_length,object_id\n"
+            + " from all_arguments \n"
+            + " where object_id = ? \n"
+            + " order by owner,package_name,object_name,overload,sequence";
+
+    private static String sql3 = "select OWNER,OBJECT_NAME,PACKAGE_NAME,ARGUMENT_NAME,\n"
+            + "POSITION,SEQUENCE,DATA_LEVEL,DATA_TYPE,\n"
+            + " OVERLOAD, IN_OUT, TYPE_OWNER, TYPE_NAME, TYPE_SUBNAME, PLS_TYPE,data_length,object_id\n"
+            + " from all_arguments \n"
+            + " where owner = ? and package_name = ?\n"
+            + " order by owner,package_name,object_name,overload,sequence";
+
+    private static String quote(String name) {
+        return "\"" + name + "\"";
+    }
+
+    private static void checkResolvedName(ResolvedName rn, String name) {
+        if (rn.dblink != null) {
+            throw new RuntimeException("no call over dblink");
+        }
+        if (rn.part1_type == 9) {
+            if (rn.part2 == null) {
+                throw new RuntimeException("only package given: " + name);
+            }
+        } else if (rn.part1_type != 7 && rn.part1_type != 8) {
+            throw new RuntimeException("this is not a gobal procedure/function, "
+                    + "nor a procedure/function in a package: " + name);
+        }
+    }
+
+    // number of procedure and package descriptions read from the
+    // data dictionary, for tests
+    static final AtomicInteger dictionaryQueries = new AtomicInteger(0);
+
+    private ArrayList<Procedure> getProcsFromDB(ResolvedName rn, String name) throws SQLException {
+        ArrayDeque<ArgumentsRow> argument_rows;
+        PreparedStatement pstm;
+        dictionaryQueries.incrementAndGet();
+
+        if (rn.part1_type == 7 || rn.part1_type == 8) {
+            // this a global procedure or function
+            pstm = this.connection.prepareCall(sql2);
+            pstm.setBigDecimal(1, new BigDecimal(rn.object_number));
+        } else {
+            // this is procedure or function in a package
+            pstm = this.connection.prepareCall(sql1);
+            pstm.setString(1, rn.schema);
+            pstm.setString(2, rn.part1);
+            pstm.setString(3, rn.part2);
+        }
+        try (ResultSet rs = pstm.executeQuery()) {
+            argument_rows = fetchArgumentsRows(rs);
+            rs.close();
+        }
+        pstm.close();
+        if (argument_rows.isEmpty()) {
+            throw new ProcedureNotFoundException("procedure in package does not exist or object is not valid: " + name);
+        }
+        return eatProcs(argument_rows);
+    }
+
+    // describe all procedures and functions of package in one query,
+    // the result maps the object_name to the overloads
+    private HashMap<String, ArrayList<Procedure>> getPackageFromDB(ResolvedName rn) throws SQLException {
+        ArrayDeque<ArgumentsRow> argument_rows;
+        dictionaryQueries.incrementAndGet();
+        try (PreparedStatement pstm = this.connection.prepareStatement(sql3)) {
+            pstm.setString(1, rn.schema);
+            pstm.setString(2, rn.part1);
+            try (ResultSet rs = pstm.executeQuery()) {
+                argument_rows = fetchArgumentsRows(rs);
+            }
+        }
+        HashMap<String, ArrayList<Procedure>> res = new HashMap<>();
+        for (Procedure p : eatProcs(argument_rows)) {
+            ArrayList<Procedure> l = res.get(p.name);
+            if (l == null) {
+                l = new ArrayList<>();
+                res.put(p.name, l);
+            }
+            l.add(p);
+        }
+        return res;
+    }
+
+    private ArrayList<Procedure> eatProcs(ArrayDeque<ArgumentsRow> argument_rows) throws SQLException {
+        probeIndexByTables(argument_rows);
+        ArrayList<Procedure> procs = new ArrayList<>();
+        while (!argument_rows.isEmpty()) {
+            Procedure p = eatProc(argument_rows);
+            completeProc(p);
+            procs.add(p);
+        }
+        return procs;
+    }
+
+    private void completeProc(Procedure p) {
+        if (p.package_ == null) {
+            p.call_name = quote(p.owner) + "." + quote(p.name);
+        } else {
+            p.call_name = quote(p.owner) + "." + quote(p.package_) + "." + quote(p.name);
+        }
+        p.plsqlstatement = createStatementString(p, false);
+    }
+
+    // thrown if the procedure can not be found in all_arguments, this
+    // result is cached for a short time
+    private static class ProcedureNotFoundException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ProcedureNotFoundException(String msg) {
+            super(msg);
+        }
+    }
+
+    // a JVM wide cache, all ProcedureCallers share it.
+    // concurrent requests for the same key are served by one load,
+    // the other threads wait for its result. Failed loads are removed
+    // at once, unless the object does not exist, this is remembered for
+    // missingObjectMillis.
+    private static final class SharedCache<V> {
+
+        private static final class Entry<V> {
+
+            final FutureTask<V> task;
+            volatile long expires = Long.MAX_VALUE;
+
+            Entry(Callable<V> loader) {
+                this.task = new FutureTask<>(loader);
+            }
+        }
+
+        private final ConcurrentHashMap<String, Entry<V>> map = new ConcurrentHashMap<>();
+
+        V get(String key, Callable<V> loader) throws SQLException {
+            while (true) {
+                Entry<V> e = map.get(key);
+                if (e == null) {
+                    Entry<V> ne = new Entry<>(loader);
+                    e = map.putIfAbsent(key, ne);
+                    if (e == null) {
+                        e = ne;
+                        ne.task.run();
+                    }
+                }
+                if (e.expires <= System.currentTimeMillis()) {
+                    map.remove(key, e);
+                    continue;
+                }
+                try {
+                    return e.task.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("interrupted while waiting for metadata: " + key, ex);
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (isMissingObject(cause)) {
+                        if (e.expires == Long.MAX_VALUE) {
+                            e.expires = System.currentTimeMillis() + missingObjectMillis;
+                        }
+                    } else {
+                        map.remove(key, e);
+                    }
+                    if (cause instanceof SQLException) {
+                        throw (SQLException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        }
+
+        void put(String key, final V value) {
+            Entry<V> e = new Entry<>(() -> value);
+            e.task.run();
+            map.put(key, e);
+        }
 
-        // not null if function
-        Type returnType;
-        String original_name;
-        String owner;
-        String package_; // could be null
-        String name;
-        int overload;
-        ArrayList<Argument> arguments;
-        // used to store the generated pl/sql block
-        String plsqlstatement = null;
+        void remove(String key) {
+            map.remove(key);
+        }
+
+        // true if there is a value or a running load for the key
+        boolean contains(String key) {
+            Entry<V> e = map.get(key);
+            return e != null && e.expires > System.currentTimeMillis();
+        }
+
+        void clear() {
+            map.clear();
+        }
     }
 
-    // this class corresponds 1:1 the columns in all_arguments, some columns are lft out
-    // when working with the data in all_arguments it is transformed into an ArrayList
-    // of this ArgumentsRow
-    private static class ArgumentsRow {
+    // ORA-06564: object does not exist, raised by dbms_utility.name_resolve
+    private static boolean isMissingObject(Throwable t) {
+        return t instanceof ProcedureNotFoundException
+                || (t instanceof SQLException && ((SQLException) t).getErrorCode() == 6564);
+    }
 
-        String owner;
-        String object_name;
-        String package_name;
-        String argument_name;
-        int position;
-        int sequence;
-        int data_level;
-        String data_type;
-        int overload;
-        String in_out;
-        String type_owner;
-        String type_name;
-        String type_subname;
-        String pls_type;
-        int data_length;
+    private static volatile long missingObjectMillis = 10000;
+
+    // name as given by the caller -> resolved name,
+    // key is session_user, current_schema and the name
+    private static final SharedCache<ResolvedName> resolvedNames = new SharedCache<>();
+
+    // resolved object -> procedures,
+    // key is the resolved object, the current_schema and the settings
+    // of the ProcedureCaller which influence the Procedure objects
+    private static final SharedCache<ArrayList<Procedure>> procedures = new SharedCache<>();
+
+    // resolved package -> object_name -> procedures, filled by describePackage
+    private static final SharedCache<HashMap<String, ArrayList<Procedure>>> packages = new SharedCache<>();
+
+    /**
+     * Set how long the fact that a procedure does not exist is remembered.
+     *
+     * @param millis the time in milliseconds, 0 disables caching of missing
+     * procedures
+     */
+    public static void setMissingProcedureCacheMillis(long millis) {
+        missingObjectMillis = millis;
     }
 
-    private static ArrayDeque<ArgumentsRow> fetchArgumentsRows(ResultSet rs) throws SQLException {
-        ArrayDeque<ArgumentsRow> res = new ArrayDeque<>();
-        while (rs.next()) {
-            ArgumentsRow r = new ArgumentsRow();
-            r.owner = rs.getString("OWNER");
-            r.object_name = rs.getString("OBJECT_NAME");
-            r.package_name = rs.getString("PACKAGE_NAME");
-            r.argument_name = rs.getString("ARGUMENT_NAME");
-            r.position = rs.getInt("POSITION");
-            r.sequence = rs.getInt("SEQUENCE");
-            r.data_level = rs.getInt("DATA_LEVEL");
-            r.data_type = rs.getString("DATA_TYPE");
-            r.overload = rs.getInt("OVERLOAD");
-            if (rs.wasNull()) {
-                r.overload = -1; //just not null
+    /**
+     * Remove all procedure metadata shared by the ProcedureCallers in this JVM.
+     * Use this after changing the signature of a procedure.
+     */
+    public static void clearMetadataCache() {
+        resolvedNames.clear();
+        procedures.clear();
+        packages.clear();
+        metadataGeneration.incrementAndGet();
+    }
+
+    // incremented by clearMetadataCache, for caches of Procedure objects
+    // outside of the shared caches
+    private static final AtomicInteger metadataGeneration = new AtomicInteger(0);
+
+    static int metadataGeneration() {
+        return metadataGeneration.get();
+    }
+
+    // volatile, a PooledProcedureCaller shares them between threads
+    private volatile String sessionUser = null;
+    private volatile String currentSchema = null;
+
+    private void fetchSessionContext() throws SQLException {
+        try (PreparedStatement pstm = this.connection.prepareStatement(
+                "select sys_context('USERENV','SESSION_USER'), sys_context('USERENV','CURRENT_SCHEMA') from dual");
+                ResultSet rs = pstm.executeQuery()) {
+            rs.next();
+            this.sessionUser = rs.getString(1);
+            this.currentSchema = rs.getString(2);
+        }
+    }
+
+    private String metadataKey(String object) {
+        return object + "/" + this.currentSchema + settingsKey();
+    }
+
+    // the settings which influence the Procedure objects and the generated block
+    private String settingsKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('/').append(this.downCasing)
+                .append('/').append(this.exportDateAsString)
+                .append('/').append(this.numberTableName)
+                .append('/').append(this.varchar2TableName)
+                .append('/').append(this.dateTableName)
+                .append('/').append(this.rawTableName);
+        return sb.toString();
+    }
+
+    // for the stubs of StubProcessor, their blocks and marshalling code were
+    // generated with the settings of the snapshot
+    void checkSettings(String settings) {
+        String key = settingsKey();
+        if (!key.equals(settings)) {
+            throw new RuntimeException("the settings of the ProcedureCaller " + key
+                    + " differ from the settings of the snapshot " + settings);
+        }
+    }
+
+    private String nameKey(String name) throws SQLException {
+        if (this.currentSchema == null) {
+            fetchSessionContext();
+        }
+        return this.sessionUser + "/" + this.currentSchema + "/" + name;
+    }
+
+    private ResolvedName lookupName(final String name) throws SQLException {
+        return resolvedNames.get(nameKey(name),
+                () -> resolveName(this.connection, name, false));
+    }
+
+    // a cached resolved name is stale after the object was dropped and
+    // created again, then the metadata load does not find the object.
+    // In this case the name is resolved again and, if the result differs,
+    // the lookup is retried once.
+    private ArrayList<Procedure> lookupProcs(final String name) throws SQLException {
+        final ResolvedName rn = lookupName(name);
+        try {
+            return lookupProcs(rn, name);
+        } catch (SQLException | RuntimeException ex) {
+            if (!isMissingObject(ex)) {
+                throw ex;
             }
-            r.in_out = rs.getString("IN_OUT");
-            r.type_owner = rs.getString("TYPE_OWNER");
-            r.type_name = rs.getString("TYPE_NAME");
-            r.type_subname = rs.getString("TYPE_SUBNAME");
-            r.pls_type = rs.getString("PLS_TYPE");
-            r.data_length = rs.getInt("DATA_LENGTH");
-            if (rs.wasNull()) {
-                r.data_length = 0;
+            resolvedNames.remove(nameKey(name));
+            ResolvedName rn2 = lookupName(name);
+            if (rn2.toString().equals(rn.toString())) {
+                throw ex;
             }
-            res.add(r);
+            return lookupProcs(rn2, name);
         }
-        return res;
     }
 
-    // get a Field from Args a and advance the internal position to the position
-    // after this Field.
-    // due to the recursive structure of PL/SQL types this method is recursive
-    private Field eatArg(ArrayDeque<ArgumentsRow> a) {
-        ArgumentsRow r = a.getFirst();
-        Field f = new Field();
-        f.name = r.argument_name;
-        if (r.data_type.equals("NUMBER")
-                || r.data_type.equals("DATE")
-                || r.data_type.equals("INTEGER")
-                || r.data_type.equals("PL/SQL BOOLEAN")
-                || r.data_type.equals("BINARY_INTEGER")) {
-            NamedType t = new NamedType(r.data_type, this.exportDateAsString);
-            f.type = t;
-            a.pop();
-            return f;
+    private ArrayList<Procedure> lookupProcs(final ResolvedName rn, final String name) throws SQLException {
+        checkResolvedName(rn, name);
+        if (rn.part1_type != 9) {
+            return procedures.get(metadataKey(rn.object_number.toString()),
+                    () -> getProcsFromDB(rn, name));
         }
-        if (r.data_type.equals("VARCHAR2")) {
-            Varchar2Type vt = new Varchar2Type();
-            vt.name = "VARCHAR2";
-            vt.size = r.data_length;
-            f.type = vt;
-            a.pop();
-            return f;
+        final String procKey = metadataKey(rn.schema + "." + rn.part1 + "." + rn.part2);
+        // a package described before is used even if describeWholePackage is off
+        if (!this.describeWholePackage && !packages.contains(packageKey(rn))) {
+            return procedures.get(procKey, () -> getProcsFromDB(rn, name));
         }
-        if (r.data_type.equals("RAW")) {
-            RawType vt = new RawType();
-            vt.name = "RAW";
-            vt.size = r.data_length;
-            f.type = vt;
-            a.pop();
-            return f;
+        return procedures.get(procKey, () -> {
+            ArrayList<Procedure> procs = describePackage(rn).get(rn.part2);
+            if (procs == null) {
+                throw new ProcedureNotFoundException("procedure in package does not exist or object is not valid: " + name);
+            }
+            return procs;
+        });
+    }
+
+    private HashMap<String, ArrayList<Procedure>> describePackage(final ResolvedName rn) throws SQLException {
+        return packages.get(packageKey(rn), () -> getPackageFromDB(rn));
+    }
+
+    private String packageKey(ResolvedName rn) {
+        return metadataKey(rn.schema + "." + rn.part1);
+    }
+
+    /**
+     * Read the description of all procedures and functions of a package into
+     * the metadata cache. This needs one query, later calls to procedures of
+     * this package do not access the data dictionary.
+     *
+     * @param name the name of the package, synonyms are resolved
+     * @throws SQLException
+     */
+    public void describePackage(String name) throws SQLException {
+        ResolvedName rn = lookupName(name);
+        if (rn.dblink != null) {
+            throw new RuntimeException("no call over dblink");
         }
-        if (r.data_type.equals("TABLE")) {
-            TableType t = new TableType();
-            t.owner = r.type_owner;
-            t.package_ = r.type_name;
-            t.name = r.type_subname;
-            a.pop();
-            Field f2 = eatArg(a);
-            t.slottype = f2.type;
-            f.type = t;
-            return f;
+        if (rn.part1_type != 9 || rn.part2 != null) {
+            throw new RuntimeException("this is not a package: " + name);
         }
-        if (r.data_type.equals("PL/SQL RECORD")) {
-            RecordType t = new RecordType();
-            t.downCasing = this.downCasing;
-            t.owner = r.type_owner;
-            t.package_ = r.type_name;
-            t.name = r.type_subname;
-            t.fields = new ArrayList<>();
-            int level = r.data_level;
-            a.pop();
-            while (!a.isEmpty() && a.getFirst().data_level > level) {
-                t.fields.add(eatArg(a));
+        describePackage(rn);
+    }
+
+    private boolean describeWholePackage = false;
+
+    /**
+     * @return true if the first use of procedure in a package describes the
+     * whole package
+     */
+    public boolean getDescribeWholePackage() {
+        return describeWholePackage;
+    }
+
+    /**
+     * @param describeWholePackage if true the first use of procedure in a
+     * package reads the description of all procedures of the package in one
+     * query, otherwise only the procedure itself is described
+     */
+    public void setDescribeWholePackage(boolean describeWholePackage) {
+        this.describeWholePackage = describeWholePackage;
+    }
+
+    // a snapshot file contains the Procedure objects of a schema, it is
+    // written by writeSnapshot and read by loadSnapshot.
+    // Layout: magic, version, settingsKey, number of objects and for each object
+    //   owner, object_name, object_type, object_id, last_ddl_time,
+    //   number of procedures and the procedures.
+    // Strings are stored as length (-1 for null) and UTF-8 bytes.
+    private static final int SNAPSHOT_MAGIC = 0x4a504c53;
+    private static final int SNAPSHOT_VERSION = 4;
+
+    private static String sqlObjects = "select owner, object_name, object_type, object_id, last_ddl_time, status\n"
+            + " from all_objects\n"
+            + " where object_type in ('PACKAGE','PROCEDURE','FUNCTION') and owner in ";
+
+    private static String sqlSchemaArguments = "select OWNER,OBJECT_NAME,PACKAGE_NAME,ARGUMENT_NAME,\n"
+            + "POSITION,SEQUENCE,DATA_LEVEL,DATA_TYPE,\n"
+            + " OVERLOAD, IN_OUT, TYPE_OWNER, TYPE_NAME, TYPE_SUBNAME, PLS_TYPE,data_length,object_id\n"
+            + " from all_arguments \n"
+            + " where owner = ?\n"
+            + " order by owner,package_name,object_name,overload,sequence";
+
+    private static class SnapshotObject {
+
+        String owner;
+        String object_name;
+        String object_type;
+        long object_id;
+        long last_ddl_time;
+        boolean valid;
+        // object_name of the procedure -> overloads
+        LinkedHashMap<String, ArrayList<Procedure>> procs = new LinkedHashMap<>();
+    }
+
+    // one query for all objects of the given owners
+    private HashMap<Long, SnapshotObject> fetchObjects(Collection<String> owners) throws SQLException {
+        StringBuilder sb = new StringBuilder(sqlObjects);
+        sb.append("(");
+        for (int i = 0; i < owners.size(); i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        sb.append(")");
+        HashMap<Long, SnapshotObject> res = new HashMap<>();
+        try (PreparedStatement pstm = this.connection.prepareStatement(sb.toString())) {
+            int i = 1;
+            for (String owner : owners) {
+                pstm.setString(i, owner);
+                i++;
             }
-            f.type = t;
-            if (t.isAnonymous()) {
-                throw new RuntimeException("anonymous record types (%rowtype) are not supported");
+            try (ResultSet rs = pstm.executeQuery()) {
+                while (rs.next()) {
+                    SnapshotObject o = new SnapshotObject();
+                    o.owner = rs.getString(1);
+                    o.object_name = rs.getString(2);
+                    o.object_type = rs.getString(3);
+                    o.object_id = rs.getLong(4);
+                    o.last_ddl_time = rs.getTimestamp(5).getTime();
+                    o.valid = "VALID".equals(rs.getString(6));
+                    res.put(o.object_id, o);
+                }
             }
-            return f;
         }
-        // as of Oracle 11.2.0.2.0 ref cursors can not be part of records or be
-        // part of a table
-        if (r.data_type.equals("REF CURSOR")) {
-            a.pop();
-            if (a.isEmpty() || a.getFirst().data_level == 0) {
-                SysRefCursorType t = new SysRefCursorType(this.exportDateAsString, this.downCasing);
-                f.type = t;
-                return f;
+        return res;
+    }
+
+    /**
+     * Write the description of all procedures and functions of a schema to a
+     * snapshot. Procedures which can not be called with this ProcedureCaller,
+     * e.g. because of unsupported argument types, are left out and logged.
+     *
+     * @param schema the schema, as in the data dictionary
+     * @param out the snapshot is written to this stream
+     * @return the number of procedures and functions in the snapshot
+     * @throws SQLException
+     * @throws IOException
+     */
+    public int writeSnapshot(String schema, OutputStream out) throws SQLException, IOException {
+        return writeSnapshot(schema, out, null);
+    }
+
+    /**
+     * Like writeSnapshot(schema, out), the procedures and functions which are
+     * left out are added to skipped, as name and reason.
+     *
+     * @param schema the schema, as in the data dictionary
+     * @param out the snapshot is written to this stream
+     * @param skipped receives the procedures which are not in the snapshot,
+     * may be null
+     * @return the number of procedures and functions in the snapshot
+     * @throws SQLException
+     * @throws IOException
+     */
+    public int writeSnapshot(String schema, OutputStream out, List<String> skipped) throws SQLException, IOException {
+        // first the objects, if an object is changed while we read the
+        // arguments its last_ddl_time will not match when loading
+        HashMap<Long, SnapshotObject> objects = fetchObjects(Collections.singletonList(schema));
+        ArrayDeque<ArgumentsRow> argument_rows;
+        try (PreparedStatement pstm = this.connection.prepareStatement(sqlSchemaArguments)) {
+            pstm.setString(1, schema);
+            try (ResultSet rs = pstm.executeQuery()) {
+                argument_rows = fetchArgumentsRows(rs);
             }
-            TypedRefCursorType t = new TypedRefCursorType();
-            t.owner = r.type_owner;
-            t.package_ = r.type_name;
-            t.name = r.type_subname;
-            Field f2 = eatArg(a);
-            if (f2.type instanceof RecordType) {
-                t.rectype = (RecordType) f2.type;
-                if (t.rectype.isAnonymous()) {
-                    throw new RuntimeException("anonymous record types (%rowtype) are not supported for typed ref cursors");
+        }
+        probeIndexByTables(argument_rows);
+        // split the rows by object and object_name, a procedure is only
+        // written if all its overloads can be described
+        int count = 0;
+        while (!argument_rows.isEmpty()) {
+            ArgumentsRow first = argument_rows.getFirst();
+            ArrayDeque<ArgumentsRow> rows = new ArrayDeque<>();
+            while (!argument_rows.isEmpty()
+                    && argument_rows.getFirst().object_id == first.object_id
+                    && argument_rows.getFirst().object_name.equals(first.object_name)) {
+                rows.add(argument_rows.pop());
+            }
+            SnapshotObject o = objects.get(first.object_id);
+            if (o == null || !o.valid) {
+                continue;
+            }
+            try {
+                ArrayList<Procedure> procs = new ArrayList<>();
+                while (!rows.isEmpty()) {
+                    Procedure p = eatProc(rows);
+                    completeProc(p);
+                    procs.add(p);
+                }
+                o.procs.put(first.object_name, procs);
+                count++;
+            } catch (RuntimeException ex) {
+                // not supported, the procedure is described when it is called
+                String name = first.package_name == null
+                        ? first.owner + "." + first.object_name
+                        : first.owner + "." + first.package_name + "." + first.object_name;
+                logger.log(Level.INFO, "not in snapshot: " + name + ", " + ex.getMessage());
+                if (skipped != null) {
+                    skipped.add(name + ": " + ex.getMessage());
                 }
-                f.type = t;
-                return f;
-            } else {
-                throw new RuntimeException("unknown record type for cursor");
             }
         }
-        if (r.data_type.equals("PL/SQL TABLE")) {
-            char tt = isIndexByVarcharOrInt(r.type_owner, r.type_name, r.type_subname);
-            if (tt == 'V') {
-                IndexByStringTableType t = new IndexByStringTableType();
-                t.owner = r.type_owner;
-                t.package_ = r.type_name;
-                t.name = r.type_subname;
-                a.pop();
-                Field f2 = eatArg(a);
-                t.slottype = f2.type;
-                f.type = t;
-                return f;
-            } else if (tt == 'I') {
-                IndexByIntegerTableType t = new IndexByIntegerTableType();
-                t.owner = r.type_owner;
-                t.package_ = r.type_name;
-                t.name = r.type_subname;
-                a.pop();
-                Field f2 = eatArg(a);
-                t.slottype = f2.type;
-                f.type = t;
-                return f;
-            } else {
-                throw new Error("BUG");
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        dos.writeInt(SNAPSHOT_MAGIC);
+        dos.writeInt(SNAPSHOT_VERSION);
+        writeString(dos, settingsKey());
+        int n = 0;
+        for (SnapshotObject o : objects.values()) {
+            if (!o.procs.isEmpty()) {
+                n++;
+            }
+        }
+        dos.writeInt(n);
+        for (SnapshotObject o : objects.values()) {
+            if (o.procs.isEmpty()) {
+                continue;
+            }
+            writeString(dos, o.owner);
+            writeString(dos, o.object_name);
+            writeString(dos, o.object_type);
+            dos.writeLong(o.object_id);
+            dos.writeLong(o.last_ddl_time);
+            dos.writeInt(o.procs.size());
+            for (ArrayList<Procedure> procs : o.procs.values()) {
+                dos.writeInt(procs.size());
+                for (Procedure p : procs) {
+                    writeProcedure(dos, p);
+                }
+            }
+        }
+        dos.flush();
+        return count;
+    }
+
+    /**
+     * Load a snapshot written by writeSnapshot into the metadata cache. The
+     * objects in the snapshot are checked against all_objects in one query,
+     * objects which have been changed or are not valid are skipped. The
+     * snapshot must have been written with the same settings (down casing,
+     * dates as string, table names).
+     *
+     * @param file the snapshot file
+     * @return the number of objects (packages, procedures, functions) loaded
+     * @throws SQLException
+     * @throws IOException
+     */
+    public int loadSnapshot(File file) throws SQLException, IOException {
+        ArrayList<SnapshotObject> objects = readSnapshot(file);
+        LinkedHashSet<String> owners = new LinkedHashSet<>();
+        for (SnapshotObject o : objects) {
+            owners.add(o.owner);
+        }
+        if (objects.isEmpty()) {
+            return 0;
+        }
+        HashMap<Long, SnapshotObject> current = fetchObjects(owners);
+        if (this.currentSchema == null) {
+            fetchSessionContext();
+        }
+        int count = 0;
+        for (SnapshotObject o : objects) {
+            SnapshotObject c = current.get(o.object_id);
+            if (c == null || !c.valid || c.last_ddl_time != o.last_ddl_time) {
+                continue;
+            }
+            for (Map.Entry<String, ArrayList<Procedure>> kv : o.procs.entrySet()) {
+                if (o.object_type.equals("PACKAGE")) {
+                    procedures.put(metadataKey(o.owner + "." + o.object_name + "." + kv.getKey()), kv.getValue());
+                } else {
+                    procedures.put(metadataKey(Long.toString(o.object_id)), kv.getValue());
+                }
             }
+            count++;
         }
-        throw new RuntimeException("unsupported type: " + r.data_type);
+        return count;
     }
 
-    private Procedure eatProc(ArrayDeque<ArgumentsRow> a) {
-        Procedure p = new Procedure();
-        ArgumentsRow r = a.getFirst();
-        p.package_ = r.package_name;
-        p.name = r.object_name;
-        p.overload = r.overload;
-        p.owner = r.owner;
-        p.arguments = new ArrayList<>();
-        if (a.getFirst().data_type == null) {
-            // this is a procedure with no arguments
-            a.pop();
-            return p;
-        }
-        if (r.position == 0) {
-            // this a function the return type is the first argument, the 
-            // argument name is null
-            Field f = eatArg(a);
-            p.returnType = f.type;
+    // the objects in a snapshot file, it must have been written with the
+    // settings of this ProcedureCaller
+    private ArrayList<SnapshotObject> readSnapshot(File file) throws IOException {
+        ByteBuffer buf = mapSnapshot(file);
+        if (!settingsKey().equals(readString(buf))) {
+            throw new RuntimeException("snapshot was written with different settings: " + file);
         }
-        while (!a.isEmpty() && a.getFirst().overload == p.overload) {
-            String io = a.getFirst().in_out;
-            Field f = eatArg(a);
-            Argument ar = new Argument();
-            ar.direction = io;
-            ar.name = f.name;
-            ar.type = f.type;
-            p.arguments.add(ar);
+        int n = buf.getInt();
+        ArrayList<SnapshotObject> objects = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            SnapshotObject o = new SnapshotObject();
+            o.owner = readString(buf);
+            o.object_name = readString(buf);
+            o.object_type = readString(buf);
+            o.object_id = buf.getLong();
+            o.last_ddl_time = buf.getLong();
+            int k = buf.getInt();
+            for (int j = 0; j < k; j++) {
+                int m = buf.getInt();
+                ArrayList<Procedure> procs = new ArrayList<>();
+                for (int l = 0; l < m; l++) {
+                    procs.add(readProcedure(buf));
+                }
+                o.procs.put(procs.get(0).name, procs);
+            }
+            objects.add(o);
         }
-        return p;
+        return objects;
     }
 
-    private static class ArgArrays {
+    // the snapshot positioned after magic and version
+    private static ByteBuffer mapSnapshot(File file) throws IOException {
+        final ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != SNAPSHOT_VERSION) {
+            throw new RuntimeException("not a snapshot file or wrong version: " + file);
+        }
+        return buf;
+    }
 
-        ArrayList<BigDecimal> decimal = new ArrayList<>();
-        ArrayList<String> varchar2 = new ArrayList<>();
-        ArrayList<java.sql.Timestamp> date = new ArrayList<>();
-        ArrayList<byte[]> raw = new ArrayList<>();
+    // a ProcedureCaller without connection with the settings the snapshot
+    // was written with, see settingsKey
+    private static ProcedureCaller snapshotReader(File file) throws IOException {
+        String[] settings = readString(mapSnapshot(file)).split("/", -1);
+        ProcedureCaller pc = new ProcedureCaller(null,
+                Boolean.parseBoolean(settings[1]), Boolean.parseBoolean(settings[2]));
+        pc.setNumberTableName(settings[3]);
+        pc.setVarchar2TableName(settings[4]);
+        pc.setDateTableName(settings[5]);
+        pc.setRawTableName(settings[6]);
+        return pc;
+    }
 
-        public void addNumber(Number n) {
-            if (n == null) {
-                this.decimal.add(null);
-            } else if (n instanceof Integer) {
-                this.decimal.add(BigDecimal.valueOf((Integer) n));
-            } else if (n instanceof Long) {
-                this.decimal.add(BigDecimal.valueOf((Long) n));
-            } else if (n instanceof BigInteger) {
-                this.decimal.add(new BigDecimal((BigInteger) n));
-            } else if (n instanceof BigDecimal) {
-                this.decimal.add((BigDecimal) n);
-            } else if (n instanceof Double) {
-                this.decimal.add(BigDecimal.valueOf((Double) n));
-            } else {
-                throw new RuntimeException("unsupported number type");
+    /*
+     The Java source of a stub class for StubProcessor: for each procedure
+     a public static method which calls it with a Map of named arguments
+     like call(String, Map), with the block from the snapshot and the
+     marshalling code of a generated marshaller as static methods. Per
+     procedure m there are:
+       sql_m   the block
+       c_m     the constants of the marshalling code
+       k_m     the keys of the rows of the cursors
+       s_m     the statistics of the cursors
+       count_m, fill_m, read_m  the marshalling code, for many arguments
+               with the parts countPartK_m, fillPartK_m and readPartK_m
+     The blocks and the marshalling code depend on the settings of the
+     snapshot, each method checks that the ProcedureCaller has them.
+     The class is in the package of ProcedureCaller, it uses its package
+     private parts. The names are owner.package.procedure, package.procedure
+     or procedure, optionally followed by #overload.
+     */
+    static String genStubSource(File snapshot, String className, List<String> names) throws IOException {
+        ProcedureCaller reader = snapshotReader(snapshot);
+        HashMap<String, ArrayList<Procedure>> index = new HashMap<>();
+        for (SnapshotObject o : reader.readSnapshot(snapshot)) {
+            for (Map.Entry<String, ArrayList<Procedure>> kv : o.procs.entrySet()) {
+                if (o.object_type.equals("PACKAGE")) {
+                    index.put(o.owner + "." + o.object_name + "." + kv.getKey(), kv.getValue());
+                    index.put(o.object_name + "." + kv.getKey(), kv.getValue());
+                } else {
+                    index.put(o.owner + "." + o.object_name, kv.getValue());
+                    index.put(o.object_name, kv.getValue());
+                }
             }
         }
-
-        public void addString(String s) {
-            this.varchar2.add(s);
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(ProcedureCaller.class.getPackage().getName()).append(";\n\n");
+        sb.append("// generated from ").append(snapshot.getName()).append(", do not edit\n");
+        sb.append("public final class ").append(className).append(" {\n\n");
+        sb.append("private ").append(className).append("() {\n}\n\n");
+        sb.append("private static final String settings = ").append(javaString(reader.settingsKey())).append(";\n");
+        HashSet<String> methods = new HashSet<>();
+        for (String name : names) {
+            String procName = name;
+            int overload = 0;
+            int hash = name.indexOf('#');
+            if (hash >= 0) {
+                procName = name.substring(0, hash);
+                overload = Integer.parseInt(name.substring(hash + 1));
+            }
+            ArrayList<Procedure> procs = index.get(procName.toUpperCase());
+            if (procs == null) {
+                throw new RuntimeException("procedure/function is not in the snapshot: " + name);
+            }
+            if (overload == 0 && procs.size() > 1) {
+                throw new RuntimeException("procedure/function is overloaded, supply a overload: " + name);
+            }
+            if (overload < 0 || overload > procs.size()) {
+                throw new RuntimeException("the overload does not exist for procedure/function " + name);
+            }
+            Procedure p = procs.get(overload == 0 ? 0 : overload - 1);
+            String m = p.name.toLowerCase() + (overload == 0 ? "" : "_" + overload);
+            if (javax.lang.model.SourceVersion.isKeyword(m)) {
+                m = m + "_";
+            }
+            if (!javax.lang.model.SourceVersion.isIdentifier(m) || !methods.add(m)) {
+                throw new RuntimeException("can not use " + m + " as method name for " + name);
+            }
+            genStubMethod(sb, p, m);
         }
+        sb.append("}\n");
+        return sb.toString();
+    }
 
-        public void addDate(java.util.Date d) {
-            if (d == null) {
-                this.date.add(null);
-            } else {
-                this.date.add(new Timestamp(d.getTime()));
+    private static void genStubMethod(StringBuilder sb, Procedure p, String m) {
+        JavaGen gen = new JavaGen();
+        gen.constantsArray = "c_" + m;
+        gen.helperModifiers = "private static ";
+        gen.helperSuffix = "_" + m;
+        StringBuilder code = new StringBuilder();
+        genMarshallerMethods(code, p, gen, "private static ", "_" + m);
+        code.append(gen.helpers);
+        sb.append("\n// ").append(p.call_name).append("\n");
+        sb.append("private static final String sql_").append(m).append(" = ");
+        // a string constant in a class file is limited to 64K bytes
+        String sql = p.plsqlstatement;
+        if (sql.length() <= 8000) {
+            sb.append(javaString(sql));
+        } else {
+            sb.append("String.join(\"\"");
+            for (int i = 0; i < sql.length(); i += 8000) {
+                sb.append(",\n").append(javaString(sql.substring(i, Math.min(sql.length(), i + 8000))));
             }
+            sb.append(")");
         }
+        sb.append(";\n");
+        sb.append("private static final Object[] c_").append(m).append(" = {");
+        for (int i = 0; i < gen.constants.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append(keysSource((RowMap.Keys) gen.constants.get(i)));
+        }
+        sb.append("};\n");
+        ArrayList<Type> types = cursorTypes(p);
+        sb.append("private static final RowMap.Keys[] k_").append(m).append(" = {");
+        for (int i = 0; i < types.size(); i++) {
+            RowMap.Keys k = cursorKeys(types.get(i));
+            sb.append(i == 0 ? "\n" : ",\n").append(k == null ? "null" : keysSource(k));
+        }
+        sb.append("};\n");
+        sb.append("private static final ProcedureCaller.CursorStats[] s_").append(m).append(" = {");
+        for (int i = 0; i < types.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append("new ProcedureCaller.CursorStats()");
+        }
+        sb.append("};\n\n");
+        sb.append("public static java.util.Map<String, Object> ").append(m)
+                .append("(ProcedureCaller pc, java.util.Map<String, Object> args) throws java.sql.SQLException {\n");
+        sb.append("pc.checkSettings(settings);\n");
+        sb.append("ProcedureCaller.ArgArrays a = new ProcedureCaller.ArgArrays();\n");
+        sb.append("count_").append(m).append("(args, a);\n");
+        sb.append("a.allocate();\n");
+        sb.append("fill_").append(m).append("(args, a);\n");
+        sb.append("ProcedureCaller.ResArrays r = new ProcedureCaller.ResArrays();\n");
+        sb.append("java.util.ArrayList<java.util.ArrayList<java.util.Map<String, Object>>> cursors")
+                .append(" = new java.util.ArrayList<>();\n");
+        sb.append("pc.callBlock(sql_").append(m).append(", k_").append(m).append(", s_").append(m)
+                .append(", a, r, cursors);\n");
+        sb.append("return read_").append(m).append("(r, cursors);\n");
+        sb.append("}\n\n");
+        sb.append(code);
+    }
 
-        public void addRaw(byte[] r) {
-            this.raw.add(r);
+    // a Java expression which creates the same keys
+    private static String keysSource(RowMap.Keys k) {
+        StringBuilder sb = new StringBuilder("new RowMap.Keys(new String[]{");
+        for (int i = 0; i < k.slots.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(javaString(k.keys[k.slots[i]]));
         }
+        return sb.append("})").toString();
     }
 
-    private static class ResArrays {
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        if (s == null) {
+            dos.writeInt(-1);
+        } else {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            dos.writeInt(b.length);
+            dos.write(b);
+        }
+    }
 
-        ArrayList<BigDecimal> decimal = new ArrayList<>();
-        ArrayList<String> varchar2 = new ArrayList<>();
-        ArrayList<java.sql.Timestamp> date = new ArrayList<>();
-        ArrayList<byte[]> raw = new ArrayList<>();
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
 
-        int posd = 0;
-        int posv = 0;
-        int posdate = 0;
-        int posr = 0;
+    private static void writeProcedure(DataOutputStream dos, Procedure p) throws IOException {
+        writeString(dos, p.owner);
+        writeString(dos, p.package_);
+        writeString(dos, p.name);
+        dos.writeInt(p.overload);
+        dos.writeLong(p.object_id);
+        writeString(dos, p.call_name);
+        writeString(dos, p.plsqlstatement);
+        writeType(dos, p.returnType);
+        dos.writeInt(p.arguments.size());
+        for (Argument a : p.arguments) {
+            writeString(dos, a.name);
+            writeString(dos, a.direction);
+            writeType(dos, a.type);
+        }
+    }
 
-        public String readString() {
-            String res = varchar2.get(posv);
-            posv++;
-            return res;
+    private Procedure readProcedure(ByteBuffer buf) {
+        Procedure p = new Procedure();
+        p.owner = readString(buf);
+        p.package_ = readString(buf);
+        p.name = readString(buf);
+        p.overload = buf.getInt();
+        p.object_id = buf.getLong();
+        p.call_name = readString(buf);
+        p.plsqlstatement = readString(buf);
+        p.returnType = readType(buf);
+        int n = buf.getInt();
+        p.arguments = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Argument a = new Argument();
+            a.name = readString(buf);
+            a.key = argumentKey(a.name);
+            a.direction = readString(buf);
+            a.type = readType(buf);
+            p.arguments.add(a);
         }
+        return p;
+    }
 
-        public BigDecimal readBigDecimal() {
-            BigDecimal res = decimal.get(posd);
-            posd++;
-            return res;
+    private static void writeType(DataOutputStream dos, Type t) throws IOException {
+        if (t == null) {
+            dos.writeByte(0);
+        } else if (t instanceof NamedType) {
+            dos.writeByte(1);
+            writeString(dos, ((NamedType) t).name);
+        } else if (t instanceof Varchar2Type) {
+            dos.writeByte(2);
+            dos.writeInt(((Varchar2Type) t).size);
+        } else if (t instanceof RawType) {
+            dos.writeByte(3);
+            dos.writeInt(((RawType) t).size);
+        } else if (t instanceof RecordType) {
+            RecordType r = (RecordType) t;
+            dos.writeByte(4);
+            writeString(dos, r.owner);
+            writeString(dos, r.package_);
+            writeString(dos, r.name);
+            dos.writeInt(r.fields.size());
+            for (Field f : r.fields) {
+                writeString(dos, f.name);
+                writeType(dos, f.type);
+            }
+        } else if (t instanceof TableType) {
+            TableType tt = (TableType) t;
+            dos.writeByte(5);
+            writeString(dos, tt.owner);
+            writeString(dos, tt.package_);
+            writeString(dos, tt.name);
+            writeType(dos, tt.slottype);
+        } else if (t instanceof IndexByStringTableType) {
+            IndexByStringTableType tt = (IndexByStringTableType) t;
+            dos.writeByte(6);
+            writeString(dos, tt.owner);
+            writeString(dos, tt.package_);
+            writeString(dos, tt.name);
+            writeType(dos, tt.slottype);
+        } else if (t instanceof IndexByIntegerTableType) {
+            IndexByIntegerTableType tt = (IndexByIntegerTableType) t;
+            dos.writeByte(7);
+            writeString(dos, tt.owner);
+            writeString(dos, tt.package_);
+            writeString(dos, tt.name);
+            writeType(dos, tt.slottype);
+        } else if (t instanceof SysRefCursorType) {
+            dos.writeByte(8);
+        } else if (t instanceof TypedRefCursorType) {
+            TypedRefCursorType tt = (TypedRefCursorType) t;
+            dos.writeByte(9);
+            writeString(dos, tt.owner);
+            writeString(dos, tt.package_);
+            writeString(dos, tt.name);
+            writeType(dos, tt.rectype);
+        } else {
+            throw new Error("BUG: unknown type " + t.getClass());
         }
+    }
 
-        public java.util.Date readDate() {
-            Timestamp ts = this.date.get(posdate);
-            posdate++;
-            if (ts == null) {
+    private Type readType(ByteBuffer buf) {
+        byte tag = buf.get();
+        switch (tag) {
+            case 0:
                 return null;
+            case 1:
+                return NamedType.create(readString(buf), this.exportDateAsString);
+            case 2: {
+                Varchar2Type t = new Varchar2Type();
+                t.name = "VARCHAR2";
+                t.size = buf.getInt();
+                return t;
             }
-            return new java.util.Date(ts.getTime());
+            case 3: {
+                RawType t = new RawType();
+                t.name = "RAW";
+                t.size = buf.getInt();
+                return t;
+            }
+            case 4: {
+                RecordType t = new RecordType();
+                t.downCasing = this.downCasing;
+                t.owner = readString(buf);
+                t.package_ = readString(buf);
+                t.name = readString(buf);
+                int n = buf.getInt();
+                t.fields = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    Field f = new Field();
+                    f.name = readString(buf);
+                    f.type = readType(buf);
+                    t.fields.add(f);
+                }
+                t.compile();
+                return t;
+            }
+            case 5: {
+                TableType t = new TableType();
+                t.owner = readString(buf);
+                t.package_ = readString(buf);
+                t.name = readString(buf);
+                t.slottype = readType(buf);
+                return t;
+            }
+            case 6: {
+                IndexByStringTableType t = new IndexByStringTableType();
+                t.owner = readString(buf);
+                t.package_ = readString(buf);
+                t.name = readString(buf);
+                t.slottype = readType(buf);
+                return t;
+            }
+            case 7: {
+                IndexByIntegerTableType t = new IndexByIntegerTableType();
+                t.owner = readString(buf);
+                t.package_ = readString(buf);
+                t.name = readString(buf);
+                t.slottype = readType(buf);
+                return t;
+            }
+            case 8:
+                return new SysRefCursorType();
+            case 9: {
+                TypedRefCursorType t = new TypedRefCursorType();
+                t.owner = readString(buf);
+                t.package_ = readString(buf);
+                t.name = readString(buf);
+                t.rectype = (RecordType) readType(buf);
+                return t;
+            }
+            default:
+                throw new RuntimeException("corrupt snapshot, unknown type tag: " + tag);
         }
+    }
 
-        public byte[] readRaw() {
-            byte[] res = raw.get(posr);
-            posr++;
-            return res;
-        }
+    // the shared caches are the only cache, so clearMetadataCache reaches
+    // every ProcedureCaller
+    private ArrayList<Procedure> getProcs(String name) throws SQLException {
+        return lookupProcs(name);
     }
 
-    private String createStatementString(Procedure p) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("declare\n");
-        sb.append("an " + this.numberTableName + ";\n");
-        sb.append("av " + this.varchar2TableName + " ;\n");
-        sb.append("ad " + this.dateTableName + ";\n");
-        sb.append("ar " + this.rawTableName + ";\n");
-        sb.append("inn integer :=1;\n");
-        sb.append("inv integer :=1;\n");
-        sb.append("ind integer :=1;\n");
-        sb.append("inr integer :=1;\n");
-        sb.append("size_ integer;\n");
-        if (p.returnType != null) {
-            sb.append("result$ ").append(p.returnType.plsqlName()).append(";\n");
-        }
-        for (int i = 0; i < p.arguments.size(); i++) {
-            sb.append("p" + i + "$ ").append(p.arguments.get(i).type.plsqlName());
-            sb.append(";\n");
+    public Map<String, Object> call(
+            String name, int overload, Map<String, Object> args) throws SQLException {
+        ArrayList<Procedure> procs = getProcs(name);
+
+        if (overload > procs.size()) {
+            throw new RuntimeException("the overload does not exist for procedure/function " + name);
         }
-        sb.append("begin\n");
-        sb.append("an :=?;\n");
-        sb.append("av :=?;\n");
-        sb.append("ad :=?;\n");
-        sb.append("ar :=?;\n");
-        AtomicInteger counter = new AtomicInteger(0);
-        for (int i = 0; i < p.arguments.size(); i++) {
-            Argument a = p.arguments.get(i);
-            if (a.direction.equals("OUT")) {
-                continue;
-            }
-            a.type.genReadOutThing(sb, counter, "p" + i + "$");
+        if (overload <= 0) {
+            throw new RuntimeException("overload must greater or equal 1");
         }
-        // at this point the parameters have been filled, clear the
-        // parameter arrays
-        sb.append("an:= " + this.numberTableName + "();\n");
-        sb.append("av:= " + this.varchar2TableName + "();\n");
-        sb.append("ad:= " + this.dateTableName + "();\n");
-        sb.append("ar:= " + this.rawTableName + "();\n");
-        // generate teh actual procedure call
-        if (p.returnType != null) {
-            sb.append("result$:=");
+        return call(procs.get(overload - 1), args);
+    }
+
+    public Map<String, Object> call(
+            String name, Map<String, Object> args) throws SQLException {
+        ArrayList<Procedure> procs = getProcs(name);
+        if (procs.size() > 1) {
+            throw new RuntimeException("procedure/function is overloaded, supply a overload: " + name);
+        } else {
+            return this.call(procs.get(0), args);
         }
-        sb.append(p.original_name + "(");
-        for (int i = 0; i < p.arguments.size(); i++) {
-            if (i > 0) {
-                sb.append(", ");
+    }
+
+    /**
+     * Call a procedure with named arguments, the OUT arguments and the
+     * return value of type ref cursor are not read into Lists but returned
+     * as {@link RowCursor}s which fetch the rows while iterating. The result
+     * must be closed.
+     *
+     * @param name the name of the procedure
+     * @param args the arguments
+     * @return the result
+     * @throws SQLException
+     */
+    public StreamingResult callStreaming(String name, Map<String, Object> args) throws SQLException {
+        Procedure proc = singleProcedure(name);
+        ArgArrays argArrays = mapArgArrays(proc, args);
+        ResArrays ra = new ResArrays();
+        OracleCallableStatement cstm = executeProcedure(proc, argArrays, ra);
+        ArrayList<Type> types = cursorTypes(proc);
+        int n = types.size();
+        StatementLease lease = new StatementLease(this, cstm, proc.plsqlstatement, n);
+        ArrayList<RowCursor> cursors = new ArrayList<>();
+        boolean ok = false;
+        // the execution, the fetches of the cursors are counted as they happen
+        this.lastRoundTrips.set(1);
+        this.roundTrips.incrementAndGet();
+        try {
+            CursorStats[] stats = cursorStats(proc, n);
+            for (int j = 0; j < n; j++) {
+                cursors.add(new RowCursor(this, cstm.getCursor(j + 9), fetchSize(stats[j]),
+                        cursorKeys(types.get(j)), stats[j], lease));
             }
-            sb.append(" " + p.arguments.get(i).name + " => ");
-            sb.append("p" + i + "$");
-        }
-        sb.append(");\n");
-        // after the procedure call
-        if (p.returnType != null) {
-            p.returnType.genWriteThing(sb, counter, "result$");
-        }
-        for (int i = 0; i < p.arguments.size(); i++) {
-            Argument a = p.arguments.get(i);
-            if (a.direction.equals("IN") || (a.type instanceof SysRefCursorType || a.type instanceof TypedRefCursorType)) {
-                continue;
+            int k = 0;
+            HashMap<String, Object> res = new HashMap<>();
+            if (proc.returnType != null) {
+                res.put("RETURN", isCursor(proc.returnType) ? cursors.get(k++) : proc.returnType.readFromResArrays(ra));
             }
-            a.type.genWriteThing(sb, counter, "p" + i + "$");
-        }
-        sb.append("?:= an;\n");
-        sb.append("?:= av;\n");
-        sb.append("?:= ad;\n");
-        sb.append("?:= ar;\n");
-        for (int i = 0; i < p.arguments.size(); i++) {
-            Argument a = p.arguments.get(i);
-            if (a.direction.equals("OUT") && (a.type instanceof SysRefCursorType || a.type instanceof TypedRefCursorType)) {
-                sb.append("?:= p" + i + "$;\n");
+            for (Argument arg : proc.arguments) {
+                if (arg.direction.equals("IN")) {
+                    continue;
+                }
+                res.put(arg.key, isOutCursor(arg) ? cursors.get(k++) : arg.type.readFromResArrays(ra));
+            }
+            if (n == 0) {
+                lease.release();
+            }
+            ok = true;
+            return new StreamingResult(res, cursors);
+        } finally {
+            if (!ok) {
+                try {
+                    new StreamingResult(Collections.<String, Object>emptyMap(), cursors).close();
+                } finally {
+                    lease.release();
+                }
             }
         }
-        sb.append("end;\n");
-        return sb.toString();
     }
 
-    private void callProcedure(
-            Procedure proc,
-            ArgArrays argsArrays,
-            ResArrays resultArrays, // used as out parameter, should be empty
-            ArrayList<ArrayList<Map<String, Object>>> outCursors) // used as out parameter, should be empty
-            throws SQLException {
-        if (proc.plsqlstatement == null) {
-            proc.plsqlstatement = createStatementString(proc);
+    public Object callPositional(String name, Object... args) throws SQLException {
+        ArrayList<Procedure> procs = getProcs(name);
+        if (procs.size() > 1) {
+            throw new RuntimeException("procedure/function is overloaded, supply a overload: " + name);
+        } else {
+            return this.callPositional(procs.get(0), args);
         }
-        if (this.effectiveNumberTableName == null) {
-            this.effectiveNumberTableName = computeEffectiveName(this.numberTableName);
+    }
+
+    public Object callPositionalO(String name, int overload, Object... args) throws SQLException {
+        ArrayList<Procedure> procs = getProcs(name);
+        if (overload > procs.size()) {
+            throw new RuntimeException("the overload does not exist for procedure/function " + name);
         }
-        if (this.effectiveVarchar2TableName == null) {
-            this.effectiveVarchar2TableName = computeEffectiveName(this.varchar2TableName);
+        if (overload <= 0) {
+            throw new RuntimeException("overload must greater or equal 1");
         }
-        if (this.effectiveDateTableName == null) {
-            this.effectiveDateTableName = computeEffectiveName(this.dateTableName);
+        return this.callPositional(procs.get(overload - 1), args);
+    }
+
+    // the calls of callAsync and CallCoalescer use the connection one after
+    // the other. The locks in this package are ReentrantLocks and not
+    // synchronized, so that virtual threads waiting for them do not pin
+    // their carrier.
+    final ReentrantLock callLock = new ReentrantLock();
+
+    // the executor for callAsync without an executor, a new virtual thread
+    // for each call if the JVM has them (Java 21), else a pool of daemon
+    // threads, created when the class is first used
+    private static final class DefaultExecutor {
+
+        static final Executor EXECUTOR = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "javaplsql-async");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
         }
-        if (this.effectiveRawTableName == null) {
-            this.effectiveRawTableName = computeEffectiveName(this.rawTableName);
+    }
+
+    static Executor defaultExecutor() {
+        return DefaultExecutor.EXECUTOR;
+    }
+
+    private interface AsyncCall<T> {
+
+        T call() throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> async(AsyncCall<T> c, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            callLock.lock();
+            try {
+                return c.call();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            } finally {
+                callLock.unlock();
+            }
+        }, executor);
+    }
+
+    /**
+     * Call a procedure with named arguments on a new virtual thread (on Java
+     * 21 and later, else on a thread of a pool). The calls of a
+     * ProcedureCaller use its connection one after the other. The caller
+     * must not be used by other threads while async calls are running.
+     *
+     * @param name the name of the procedure
+     * @param args the arguments
+     * @return the future result as returned by call, an SQLException
+     * completes the future exceptionally
+     */
+    public CompletableFuture<Map<String, Object>> callAsync(String name, Map<String, Object> args) {
+        return callAsync(name, args, DefaultExecutor.EXECUTOR);
+    }
+
+    public CompletableFuture<Map<String, Object>> callAsync(String name, Map<String, Object> args,
+            Executor executor) {
+        return async(() -> call(name, args), executor);
+    }
+
+    public CompletableFuture<Map<String, Object>> callAsync(String name, int overload, Map<String, Object> args,
+            Executor executor) {
+        return async(() -> call(name, overload, args), executor);
+    }
+
+    public CompletableFuture<Object> callPositionalAsync(String name, Object... args) {
+        return callPositionalAsync(name, DefaultExecutor.EXECUTOR, args);
+    }
+
+    // the executor comes before the arguments, they are varargs. A null
+    // first argument of the overload above must be cast to Object
+    public CompletableFuture<Object> callPositionalAsync(String name, Executor executor, Object... args) {
+        return async(() -> callPositional(name, args), executor);
+    }
+
+    public CompletableFuture<Object> callPositionalOAsync(String name, int overload, Object... args) {
+        return callPositionalOAsync(name, overload, DefaultExecutor.EXECUTOR, args);
+    }
+
+    public CompletableFuture<Object> callPositionalOAsync(String name, int overload, Executor executor,
+            Object... args) {
+        return async(() -> callPositionalO(name, overload, args), executor);
+    }
+
+    private int batchSize = 1000;
+
+    /**
+     * @return the maximal number of calls callBatch sends in one round trip
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the maximal number of calls callBatch sends in one round trip,
+     * larger lists are sent in several round trips.
+     *
+     * @param batchSize the number of calls, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("the batch size must be at least 1");
         }
-        final java.sql.Array no;
-        final java.sql.Array vo;
-        final java.sql.Array do_;
-        final java.sql.Array ro;
-        try (OracleCallableStatement cstm = (OracleCallableStatement) this.connection.prepareCall(proc.plsqlstatement)) {
+        this.batchSize = batchSize;
+    }
 
-            cstm.setArray(1, this.connection.createOracleArray(this.effectiveNumberTableName, argsArrays.decimal.toArray(new BigDecimal[0])));
-            cstm.setArray(2, this.connection.createOracleArray(this.effectiveVarchar2TableName, argsArrays.varchar2.toArray(new String[0])));
-            cstm.setArray(3, this.connection.createOracleArray(this.effectiveDateTableName, argsArrays.date.toArray(new Timestamp[0])));
-            cstm.setArray(4, this.connection.createOracleArray(this.effectiveRawTableName, argsArrays.raw.toArray(new byte[0][])));
+    /**
+     * The result of one call of {@link #callBatch}: the return value and the
+     * OUT arguments as returned by call, or the error of the call.
+     */
+    public static final class BatchResult {
 
-            cstm.registerOutParameter(5, OracleTypes.ARRAY, this.effectiveNumberTableName);
-            cstm.registerOutParameter(6, OracleTypes.ARRAY, this.effectiveVarchar2TableName);
-            cstm.registerOutParameter(7, OracleTypes.ARRAY, this.effectiveDateTableName);
-            cstm.registerOutParameter(8, OracleTypes.ARRAY, this.effectiveRawTableName);
-            int j = 8;
-            for (Argument a : proc.arguments) {
-                if (a.direction.equals("OUT") && (a.type instanceof SysRefCursorType || a.type instanceof TypedRefCursorType)) {
-                    j++;
-                    cstm.registerOutParameter(j, OracleTypes.CURSOR);
-                }
-            }
-            cstm.execute();
-            no = cstm.getArray(5);
-            vo = cstm.getArray(6);
-            do_ = cstm.getArray(7);
-            ro = cstm.getArray(8);
-            int j1 = 8;
-            for (Argument a : proc.arguments) {
-                if (a.direction.equals("OUT") && (a.type instanceof SysRefCursorType || a.type instanceof TypedRefCursorType)) {
-                    j1++;
-                    try (ResultSet rs = cstm.getCursor(j1)) {
-                        outCursors.add(readSysRefCursor(this.exportDateAsString, this.downCasing, rs));
-                    }
-                }
-            }
-        }
+        private final Map<String, Object> values;
+        private final int errorCode;
+        private final String errorMessage;
 
-        for (Object o : (Object[]) no.getArray()) {
-            resultArrays.decimal.add((BigDecimal) o);
+        BatchResult(Map<String, Object> values, int errorCode, String errorMessage) {
+            this.values = values;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
         }
 
-        for (Object o : (Object[]) vo.getArray()) {
-            resultArrays.varchar2.add((String) o);
-        }
-        for (Object o : (Object[]) do_.getArray()) {
-            resultArrays.date.add((Timestamp) o);
+        /**
+         * @return the results of the call, null if the call failed
+         */
+        public Map<String, Object> getValues() {
+            return values;
         }
-        for (Object o : (Object[]) ro.getArray()) {
-            resultArrays.raw.add((byte[]) o);
+
+        /**
+         * @return true if the call did not raise an exception
+         */
+        public boolean isOk() {
+            return errorCode == 0;
         }
-    }
 
-    private Map<String, Object> call(
-            Procedure proc, Map<String, Object> args) throws SQLException {
-        ArgArrays argArrays = new ArgArrays();
-        for (Argument arg : proc.arguments) {
-            if (arg.direction.equals("OUT")) {
-                continue;
-            }
-            String aname = this.downCasing ? arg.name.toLowerCase() : arg.name;
-            if (args.containsKey(aname)) {
-                Object o = args.get(aname);
-                arg.type.fillArgArrays(argArrays, o);
-            } else {
-                throw new ConversionException("could not find argument " + arg.name);
-            }
+        /**
+         * @return the SQLCODE of the exception raised by the call, 0 if
+         * the call succeeded
+         */
+        public int getErrorCode() {
+            return errorCode;
         }
-        ResArrays ra = new ResArrays();
-        final ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
-        callProcedure(proc, argArrays, ra, outCursors);
 
-        // convert result array to result
-        HashMap<String, Object> res = new HashMap<>();
-        if (proc.returnType != null) {
-            Object o = proc.returnType.readFromResArrays(ra);
-            res.put("RETURN", o);
+        /**
+         * @return the SQLERRM of the exception raised by the call, null if
+         * the call succeeded
+         */
+        public String getErrorMessage() {
+            return errorMessage;
         }
-        for (Argument arg : proc.arguments) {
-            if (arg.direction.equals("IN")) {
-                continue;
+
+        /**
+         * @return the exception a direct call would have raised, the error
+         * code is the number of the ORA error like for the driver, null if
+         * the call succeeded
+         */
+        public SQLException getException() {
+            if (errorCode == 0) {
+                return null;
             }
-            final Object o;
-            if ((arg.type instanceof SysRefCursorType || arg.type instanceof TypedRefCursorType)) {
-                o = outCursors.get(0);
-                outCursors.remove(0);
-            } else {
-                o = arg.type.readFromResArrays(ra);
+            // SQLCODE is +100 for ORA-01403 and 1 for a user-defined exception
+            Matcher m = ORA_ERROR.matcher(errorMessage == null ? "" : errorMessage);
+            if (m.lookingAt()) {
+                return new SQLException(errorMessage, null, Integer.parseInt(m.group(1)));
+            }
+            if (errorCode == 1) {
+                return new SQLException("ORA-06510: PL/SQL: unhandled user-defined exception", null, 6510);
             }
-            String aname = this.downCasing ? arg.name.toLowerCase() : arg.name;
-            res.put(aname, o);
+            return new SQLException(errorMessage, null, Math.abs(errorCode));
         }
-        return res;
     }
 
-    // call the procedure, for each parameter there must be an entry in Object
-    private Object callPositional(Procedure proc, Object[] args) throws SQLException {
-        if (proc.arguments.size() > args.length) {
-            throw new RuntimeException("not enough arguments supplied");
-        }
-        if (proc.arguments.size() < args.length) {
-            throw new RuntimeException("too many arguments supplied");
+    private static final Pattern ORA_ERROR = Pattern.compile("ORA-(\\d+)");
+
+    /**
+     * Call a procedure once for each Map of named arguments, at most
+     * batchSize calls are sent in one round trip. Each call has its own
+     * savepoint: if a call raises an exception its changes are rolled back
+     * and its result contains the error, the other calls are not affected.
+     * All arguments are converted before the first round trip, if one can
+     * not be converted no call is executed.
+     * Procedures with ref cursors can not be called in a batch.
+     *
+     * @param name the name of the procedure
+     * @param args the arguments of the calls
+     * @return the results of the calls, in the order of args
+     * @throws SQLException
+     */
+    public List<BatchResult> callBatch(String name, List<Map<String, Object>> args) throws SQLException {
+        return callBatch(singleProcedure(name), args);
+    }
+
+    public List<BatchResult> callBatch(String name, int overload, List<Map<String, Object>> args)
+            throws SQLException {
+        return callBatch(overloadProcedure(name, overload), args);
+    }
+
+    private List<BatchResult> callBatch(Procedure proc, List<Map<String, Object>> args) throws SQLException {
+        // all arguments are converted before the first round trip, so that
+        // a conversion error does not leave some of the calls executed
+        return sendBatch(proc, batchArgs(proc, args, this.batchSize), args.size(), this.batchSize);
+    }
+
+    // the arguments of the calls converted for the batch block, one
+    // ArgArrays for each chunk of chunkSize calls. Nothing is sent, an
+    // exception means that no call was executed
+    ArrayList<ArgArrays> batchArgs(Procedure proc, List<Map<String, Object>> args, int chunkSize) {
+        if (!cursorTypes(proc).isEmpty()) {
+            throw new RuntimeException("procedures with ref cursors can not be called in a batch: " + proc.call_name);
         }
-        ArgArrays aa = new ArgArrays();
-        {
-            int i = 0;
-            for (Argument arg : proc.arguments) {
-                if (!arg.direction.equals("OUT")) {
-                    Object o = args[i];
-                    if (o instanceof Box) {
-                        o = ((Box) o).value;
-                    }
-                    arg.type.fillArgArrays(aa, o);
+        Marshaller m = this.generateMarshallers ? getMarshaller(proc) : null;
+        ArrayList<ArgArrays> chunks = new ArrayList<>();
+        for (int start = 0; start < args.size(); start += chunkSize) {
+            List<Map<String, Object>> part = args.subList(start, Math.min(args.size(), start + chunkSize));
+            ArgArrays argArrays = new ArgArrays();
+            argArrays.decimalCount++;
+            for (Map<String, Object> a : part) {
+                if (m != null) {
+                    m.count(a, argArrays);
+                } else {
+                    countMapArgs(proc, argArrays, a);
+                }
+            }
+            argArrays.allocate();
+            argArrays.addNumber(part.size());
+            for (Map<String, Object> a : part) {
+                if (m != null) {
+                    m.fill(a, argArrays);
+                } else {
+                    fillMapArgs(proc, argArrays, a);
                 }
-                i++;
             }
+            chunks.add(argArrays);
         }
-        ResArrays ra = new ResArrays();
-        final ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
-        callProcedure(proc, aa, ra, outCursors);
+        return chunks;
+    }
 
-        // convert res array and to result and out parameters
-        Object result;
-        if (proc.returnType != null) {
-            result = proc.returnType.readFromResArrays(ra);
-        } else {
-            result = null;
+    // send the chunks from batchArgs for n calls, one round trip per chunk
+    List<BatchResult> sendBatch(Procedure proc, ArrayList<ArgArrays> chunks, int n, int chunkSize)
+            throws SQLException {
+        String sql = proc.batchStatement;
+        if (sql == null) {
+            sql = createBatchStatementString(proc);
+            proc.batchStatement = sql;
         }
-        {
-            int i = 0;
-            for (Argument arg : proc.arguments) {
-                if (!arg.direction.equals("IN")) {
-
-                    if (args[i] != null && args[i] instanceof Box) {
-                        final Object o;
-                        if ((arg.type instanceof SysRefCursorType || arg.type instanceof TypedRefCursorType)) {
-                            o = outCursors.get(0);
-                            outCursors.remove(0);
-                        } else {
-                            o = arg.type.readFromResArrays(ra);
-                        }
-                        @SuppressWarnings("unchecked")
-                        Box<Object> b = (Box<Object>) args[i];
-                        b.value = o;
+        Marshaller m = this.generateMarshallers ? getMarshaller(proc) : null;
+        ArrayList<BatchResult> res = new ArrayList<>(n);
+        ArrayList<ArrayList<Map<String, Object>>> noCursors = new ArrayList<>();
+        int trips = 0;
+        try {
+            for (int c = 0; c < chunks.size(); c++) {
+                int calls = Math.min(n - c * chunkSize, chunkSize);
+                ResArrays ra = new ResArrays();
+                OracleCallableStatement cstm = executeProcedure(sql, 0, chunks.get(c), ra);
+                trips++;
+                releaseCall(cstm, sql);
+                for (int i = 0; i < calls; i++) {
+                    int code = ra.readBigDecimal().intValue();
+                    if (code != 0) {
+                        res.add(new BatchResult(null, code, ra.readString()));
                     } else {
-                        throw new RuntimeException("need a box for parameter " + arg.name);
+                        res.add(new BatchResult(m != null ? m.read(ra, noCursors) : readResults(proc, ra, noCursors),
+                                0, null));
                     }
                 }
-                i++;
             }
+        } finally {
+            this.lastRoundTrips.set(trips);
+            this.roundTrips.addAndGet(trips);
         }
-        return result;
+        return res;
     }
 
-    private static String sql1 = "select OWNER,OBJECT_NAME,PACKAGE_NAME,ARGUMENT_NAME,\n"
-            + "POSITION,SEQUENCE,DATA_LEVEL,DATA_TYPE,\n"
-            + " OVERLOAD, IN_OUT, TYPE_OWNER, TYPE_NAME, TYPE_SUBNAME, PLS_TYPE,data_length\n"
-            + " from all_arguments \n"
-            + " where owner = ? and package_name = ? and object_name = ?\n"
-            + " order by owner,package_name,object_name,overload,sequence";
-
-    private static String sql2 = "select OWNER,OBJECT_NAME,PACKAGE_NAME,ARGUMENT_NAME,"
-            + "POSITION,SEQUENCE,DATA_LEVEL,DATA_TYPE,"
-            + " OVERLOAD, IN_OUT, TYPE_OWNER, TYPE_NAME, TYPE_SUBNAME, PLS_TYPE,data_length\n"
-            + " from all_arguments \n"
-            + " where object_id = ? \n"
-            + " order by owner,package_name,object_name,overload,sequence";
-
-    private ArrayList<Procedure> getProcsFromDB(String name) throws SQLException {
-
-        ResolvedName rn = resolveName(this.connection, name, false);
-        if (rn.dblink != null) {
-            throw new RuntimeException("no call over dblink");
-        }
-        ArrayDeque<ArgumentsRow> argument_rows;
-        PreparedStatement pstm;
-
-        if (rn.part1_type == 7 || rn.part1_type == 8) {
-            // this a global procedure or function
-            pstm = this.connection.prepareCall(sql2);
-            pstm.setBigDecimal(1, new BigDecimal(rn.object_number));
-        } else if (rn.part1_type == 9) {
-            if (rn.part2 == null) {
-                throw new RuntimeException("only package given: " + name);
+    /**
+     * A procedure resolved once by {@link #prepare}: the calls through the
+     * handle do not look up the name, the overload or the generated
+     * marshaller again. The handle calls over the connection of the
+     * ProcedureCaller which prepared it, with the values of
+     * generateMarshallers and lazyResults at prepare time.
+     */
+    public static final class PreparedProcedure {
+
+        private final ProcedureCaller caller;
+        private final Procedure proc;
+        // the settings of the caller at prepare time: the marshaller if the
+        // caller generates them and it could be generated, and lazyResults
+        private final Marshaller marshaller;
+        private final boolean lazyResults;
+        private final List<String> argumentKeys;
+
+        PreparedProcedure(ProcedureCaller caller, Procedure proc) {
+            this.caller = caller;
+            this.proc = proc;
+            this.marshaller = caller.generateMarshallers ? getMarshaller(proc) : null;
+            this.lazyResults = caller.lazyResults;
+            ArrayList<String> keys = new ArrayList<>();
+            for (Argument arg : proc.arguments) {
+                keys.add(arg.key);
             }
-            // this is procedure or function in a package
-            pstm = this.connection.prepareCall(sql1);
-            pstm.setString(1, rn.schema);
-            pstm.setString(2, rn.part1);
-            pstm.setString(3, rn.part2);
-        } else {
-            throw new RuntimeException("this is not a gobal procedure/function, "
-                    + "nor a procedure/function in a package: " + name);
+            this.argumentKeys = Collections.unmodifiableList(keys);
         }
-        try (ResultSet rs = pstm.executeQuery()) {
-            argument_rows = fetchArgumentsRows(rs);
-            rs.close();
+
+        /**
+         * @return the keys of the arguments in the Map for invoke and in
+         * the result, in the order of the arguments
+         */
+        public List<String> getArgumentKeys() {
+            return argumentKeys;
         }
-        pstm.close();
-        if (argument_rows.isEmpty()) {
-            throw new RuntimeException("procedure in package does not exist or object is not valid: " + name);
+
+        /**
+         * Call the procedure with named arguments like
+         * {@link ProcedureCaller#call(String, Map)}.
+         *
+         * @param args the arguments
+         * @return the return value and the OUT arguments
+         * @throws SQLException
+         */
+        public Map<String, Object> invoke(Map<String, Object> args) throws SQLException {
+            return caller.call(proc, marshaller, lazyResults, args);
         }
-        ArrayList<Procedure> procs = new ArrayList<>();
-        while (!argument_rows.isEmpty()) {
-            Procedure p = eatProc(argument_rows);
-            p.original_name = name;
-            procs.add(p);
+
+        /**
+         * Call the procedure with positional arguments like
+         * {@link ProcedureCaller#callPositional}, OUT arguments are Boxes.
+         * A single Map argument must be passed as new Object[]{map}, else
+         * invoke(Map) is chosen.
+         *
+         * @param args the arguments
+         * @return the return value, null for a procedure
+         * @throws SQLException
+         */
+        public Object invoke(Object... args) throws SQLException {
+            return caller.callPositional(proc, args);
         }
-        return procs;
     }
 
-    private Map<String, ArrayList<Procedure>> procsMap = new HashMap<>();
+    /**
+     * Resolve a procedure which is not overloaded once for many calls.
+     *
+     * @param name the name of the procedure
+     * @return the handle for the calls
+     * @throws SQLException
+     */
+    public PreparedProcedure prepare(String name) throws SQLException {
+        return new PreparedProcedure(this, singleProcedure(name));
+    }
 
-    private ArrayList<Procedure> getProcs(String name) throws SQLException {
-        ArrayList<Procedure> procs = procsMap.get(name);
-        if (procs == null) {
-            procs = getProcsFromDB(name);
-            procsMap.put(name, procs);
-        }
-        return procs;
+    public PreparedProcedure prepare(String name, int overload) throws SQLException {
+        return new PreparedProcedure(this, overloadProcedure(name, overload));
     }
 
-    public Map<String, Object> call(
-            String name, int overload, Map<String, Object> args) throws SQLException {
+    private Procedure overloadProcedure(String name, int overload) throws SQLException {
         ArrayList<Procedure> procs = getProcs(name);
-
         if (overload > procs.size()) {
             throw new RuntimeException("the overload does not exist for procedure/function " + name);
         }
         if (overload <= 0) {
             throw new RuntimeException("overload must greater or equal 1");
         }
-        return call(procs.get(overload - 1), args);
+        return procs.get(overload - 1);
     }
 
-    public Map<String, Object> call(
-            String name, Map<String, Object> args) throws SQLException {
+    Procedure singleProcedure(String name) throws SQLException {
         ArrayList<Procedure> procs = getProcs(name);
         if (procs.size() > 1) {
             throw new RuntimeException("procedure/function is overloaded, supply a overload: " + name);
-        } else {
-            return this.call(procs.get(0), args);
         }
+        return procs.get(0);
     }
 
-    public Object callPositional(String name, Object... args) throws SQLException {
-        ArrayList<Procedure> procs = getProcs(name);
-        if (procs.size() > 1) {
-            throw new RuntimeException("procedure/function is overloaded, supply a overload: " + name);
-        } else {
-            return this.callPositional(procs.get(0), args);
+    @SuppressWarnings("unchecked")
+    private static ArgArrays objectArgArrays(Procedure proc, Object args) {
+        if (args == null) {
+            return mapArgArrays(proc, Collections.<String, Object>emptyMap());
         }
+        if (args instanceof Map) {
+            return mapArgArrays(proc, (Map<String, Object>) args);
+        }
+        return proc.argsBindings.get(args.getClass()).argArrays(args);
     }
 
-    public Object callPositionalO(String name, int overload, Object... args) throws SQLException {
-        ArrayList<Procedure> procs = getProcs(name);
-        if (overload > procs.size()) {
-            throw new RuntimeException("the overload does not exist for procedure/function " + name);
+    /**
+     * Call a procedure and return the OUT and IN OUT arguments as an object of
+     * class resultClass. The IN and IN OUT arguments are the properties of
+     * args, or the entries of args if it is a Map. Properties are the
+     * components of Java records or the fields of other classes, they are
+     * matched to the PL/SQL names ignoring case and underscores. A record
+     * argument can be a Java object of this kind too, a table a List or an
+     * array.
+     *
+     * @param <T> the result type
+     * @param name the name of the procedure
+     * @param args the arguments
+     * @param resultClass the class for the result
+     * @return an object of class resultClass
+     * @throws SQLException
+     */
+    public <T> T call(String name, Object args, Class<T> resultClass) throws SQLException {
+        Procedure proc = singleProcedure(name);
+        if (proc.returnType != null) {
+            throw new RuntimeException("this is a function, use callFunction: " + name);
         }
-        if (overload <= 0) {
-            throw new RuntimeException("overload must greater or equal 1");
+        ResultBinding rb = proc.resultBindings.get(resultClass);
+        ResArrays ra = new ResArrays();
+        ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
+        callProcedure(proc, objectArgArrays(proc, args), ra, outCursors);
+        return resultClass.cast(rb.read(ra, outCursors));
+    }
+
+    /**
+     * Call a function and return the result as an object of class
+     * returnClass. The arguments are given like for
+     * {@link #call(String, Object, Class)}, the function must not have OUT
+     * arguments.
+     *
+     * @param <T> the result type
+     * @param name the name of the function
+     * @param args the arguments
+     * @param returnClass the class of the result
+     * @return the result of the function
+     * @throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T callFunction(String name, Object args, Class<T> returnClass) throws SQLException {
+        Procedure proc = singleProcedure(name);
+        if (proc.returnType == null) {
+            throw new RuntimeException("this is not a function: " + name);
         }
-        return this.callPositional(procs.get(overload - 1), args);
+        for (Argument arg : proc.arguments) {
+            if (!arg.direction.equals("IN")) {
+                throw new RuntimeException("function has OUT arguments, use call: " + name);
+            }
+        }
+        Codec c = proc.returnCodecs.get(returnClass);
+        ResArrays ra = new ResArrays();
+        ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
+        callProcedure(proc, objectArgArrays(proc, args), ra, outCursors);
+        if (c instanceof CursorCodec) {
+            return (T) c.convert(outCursors.get(0));
+        }
+        // returnClass.cast does not work for primitive classes
+        return (T) c.read(ra);
+    }
+
+    // the dispatch of one interface method bound by bind: the procedure,
+    // the codecs for the parameters (one for each IN and IN OUT argument)
+    // and either a codec for the result or a ResultBinding or nothing
+    private static final class MethodBinding {
+
+        final Procedure proc;
+        final Codec[] argCodecs;
+        final Codec resultCodec;
+        final ResultBinding resultBinding;
+
+        MethodBinding(Procedure proc, Codec[] argCodecs, Codec resultCodec, ResultBinding resultBinding) {
+            this.proc = proc;
+            this.argCodecs = argCodecs;
+            this.resultCodec = resultCodec;
+            this.resultBinding = resultBinding;
+        }
+
+        // the binding of method to proc or null if the parameters of
+        // method do not fit the arguments of proc, why is added to errors
+        static MethodBinding create(Procedure proc, Method method, ArrayList<String> errors) {
+            java.lang.reflect.Type[] params = method.getGenericParameterTypes();
+            ArrayList<Argument> inArgs = new ArrayList<>();
+            ArrayList<Argument> outArgs = new ArrayList<>();
+            for (Argument arg : proc.arguments) {
+                if (!arg.direction.equals("OUT")) {
+                    inArgs.add(arg);
+                }
+                if (!arg.direction.equals("IN")) {
+                    outArgs.add(arg);
+                }
+            }
+            if (inArgs.size() != params.length) {
+                errors.add(proc.call_name + " has " + inArgs.size() + " IN arguments");
+                return null;
+            }
+            try {
+                Codec[] codecs = new Codec[params.length];
+                for (int i = 0; i < params.length; i++) {
+                    codecs[i] = codec(inArgs.get(i).type, params[i]);
+                }
+                java.lang.reflect.Type rt = method.getGenericReturnType();
+                if (rt == void.class) {
+                    return new MethodBinding(proc, codecs, null, null);
+                }
+                if (proc.returnType != null) {
+                    if (!outArgs.isEmpty()) {
+                        errors.add(proc.call_name + " is a function with OUT arguments");
+                        return null;
+                    }
+                    return new MethodBinding(proc, codecs, codec(proc.returnType, rt), null);
+                }
+                if (outArgs.size() == 1) {
+                    return new MethodBinding(proc, codecs, codec(outArgs.get(0).type, rt), null);
+                }
+                if (outArgs.isEmpty()) {
+                    errors.add(proc.call_name + " has no result");
+                    return null;
+                }
+                return new MethodBinding(proc, codecs, null, new ResultBinding(proc, method.getReturnType()));
+            } catch (ConversionException e) {
+                errors.add(proc.call_name + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        Object call(ProcedureCaller pc, Object[] args) throws SQLException {
+            ArgArrays a = new ArgArrays();
+            int n = this.argCodecs.length;
+            for (int i = 0; i < n; i++) {
+                this.argCodecs[i].count(a, args[i]);
+            }
+            a.allocate();
+            for (int i = 0; i < n; i++) {
+                this.argCodecs[i].fill(a, args[i]);
+            }
+            ResArrays ra = new ResArrays();
+            ArrayList<ArrayList<Map<String, Object>>> outCursors = new ArrayList<>();
+            pc.callProcedure(this.proc, a, ra, outCursors);
+            if (this.resultBinding != null) {
+                return this.resultBinding.read(ra, outCursors);
+            }
+            if (this.resultCodec == null) {
+                return null;
+            }
+            if (this.resultCodec instanceof CursorCodec) {
+                return this.resultCodec.convert(outCursors.get(0));
+            }
+            return this.resultCodec.read(ra);
+        }
+    }
+
+    /**
+     * Bind a Java interface to the procedures and functions of a package.
+     * Each abstract method calls the procedure or function with the name
+     * of the method, default methods are called as they are. The parameters of the method are the IN and IN OUT
+     * arguments in their order. The result of the method is the return
+     * value of a function, the single OUT or IN OUT argument of a
+     * procedure, or an object with a property for each OUT and IN OUT
+     * argument; void drops the results. For overloaded procedures the
+     * overload which fits the parameters is chosen. All methods are checked
+     * when the interface is bound. The calls use the connection of this
+     * ProcedureCaller. Methods which do not declare SQLException throw it
+     * wrapped in an UndeclaredThrowableException.
+     *
+     * @param <T> the interface
+     * @param iface the interface
+     * @param packageName the name of the package, null for procedures and
+     * functions which are not in a package
+     * @return an implementation of the interface
+     * @throws SQLException
+     */
+    public <T> T bind(Class<T> iface, String packageName) throws SQLException {
+        if (!iface.isInterface()) {
+            throw new IllegalArgumentException("not an interface: " + iface.getName());
+        }
+        final HashMap<Method, MethodBinding> bindings = new HashMap<>();
+        final HashMap<Method, MethodHandle> defaults = new HashMap<>();
+        for (Method m : iface.getMethods()) {
+            if (m.isDefault()) {
+                defaults.put(m, defaultMethodHandle(m));
+                continue;
+            }
+            if (!java.lang.reflect.Modifier.isAbstract(m.getModifiers())) {
+                continue;
+            }
+            String name = packageName == null ? m.getName() : packageName + "." + m.getName();
+            ArrayList<String> errors = new ArrayList<>();
+            MethodBinding b = null;
+            for (Procedure proc : getProcs(name)) {
+                MethodBinding b2 = MethodBinding.create(proc, m, errors);
+                if (b2 != null) {
+                    if (b != null) {
+                        throw new RuntimeException("more than one overload of " + name + " fits method " + m);
+                    }
+                    b = b2;
+                }
+            }
+            if (b == null) {
+                throw new RuntimeException("method " + m + " does not fit " + name + ": " + String.join(", ", errors));
+            }
+            bindings.put(m, b);
+        }
+        final ProcedureCaller pc = this;
+        Object proxy = java.lang.reflect.Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface},
+                (Object self, Method m, Object[] args) -> {
+                    MethodBinding b = bindings.get(m);
+                    if (b != null) {
+                        return b.call(pc, args == null ? new Object[0] : args);
+                    }
+                    MethodHandle h = defaults.get(m);
+                    if (h != null) {
+                        return h.bindTo(self).invokeWithArguments(args == null ? new Object[0] : args);
+                    }
+                    switch (m.getName()) {
+                        case "equals":
+                            return self == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(self);
+                        case "toString":
+                            return iface.getName() + " bound to " + packageName;
+                        default:
+                            throw new UnsupportedOperationException(m.toString());
+                    }
+                });
+        return iface.cast(proxy);
     }
 
+    // a handle which calls the default method m of an interface for a
+    // proxy, the first argument is the proxy. The lookup must have private
+    // access to the interface: on Java 9 and later privateLookupIn, on
+    // Java 8 the private constructor of Lookup. Everything is done by
+    // reflection, if it fails the interface can not be bound.
+    private static MethodHandle defaultMethodHandle(Method m) {
+        Class<?> iface = m.getDeclaringClass();
+        try {
+            MethodHandles.Lookup lookup;
+            Method pl;
+            try {
+                pl = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            } catch (NoSuchMethodException e) {
+                pl = null;
+            }
+            if (pl != null) {
+                lookup = (MethodHandles.Lookup) pl.invoke(null, iface, MethodHandles.lookup());
+            } else {
+                java.lang.reflect.Constructor<MethodHandles.Lookup> k
+                        = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                k.setAccessible(true);
+                lookup = k.newInstance(iface, MethodHandles.Lookup.PRIVATE);
+            }
+            return lookup.unreflectSpecial(m, iface);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new RuntimeException("can not call the default method " + m + " of the bound interface", e);
+        }
+    }
 }
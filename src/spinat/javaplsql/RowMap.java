@@ -0,0 +1,132 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// the Map for a record or a row of a cursor. The keys and the key to index
+// table are shared by all rows of a record type or a cursor, a row only
+// has its array of values. The map can not be changed.
+final class RowMap extends AbstractMap<String, Object> {
+
+    // the keys of the rows, created once per record type or cursor
+    static final class Keys {
+
+        // the distinct keys, in the order of the first occurrence
+        final String[] keys;
+        // for each name given to the constructor the index of its value
+        final int[] slots;
+        final HashMap<String, Integer> index;
+
+        // names may contain duplicates, e.g. column names in a cursor
+        // like for a HashMap the last value for a name wins
+        Keys(String[] names) {
+            this.index = new HashMap<>();
+            ArrayList<String> l = new ArrayList<>();
+            this.slots = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Integer j = this.index.get(names[i]);
+                if (j == null) {
+                    j = l.size();
+                    l.add(names[i]);
+                    this.index.put(names[i], j);
+                }
+                this.slots[i] = j;
+            }
+            this.keys = l.toArray(new String[0]);
+        }
+
+        Keys(List<String> names) {
+            this(names.toArray(new String[0]));
+        }
+
+        int size() {
+            return this.keys.length;
+        }
+    }
+
+    private final Keys keys;
+    private final Object[] values;
+
+    // values.length must be keys.size(), the array is not copied
+    RowMap(Keys keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return this.values.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.values.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.keys.index.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer i = this.keys.index.get(key);
+        return i == null ? null : this.values[i];
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.i < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (this.i >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Object> e = new AbstractMap.SimpleImmutableEntry<>(keys.keys[this.i], values[this.i]);
+                        this.i++;
+                        return e;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import oracle.jdbc.OracleConnection;
+
+// command line tool, writes the snapshot of a schema with
+// ProcedureCaller.writeSnapshot
+public final class SnapshotTool {
+
+    private static void usage() {
+        System.err.println("usage: SnapshotTool [options] url user password schema file");
+        System.err.println("options:");
+        System.err.println("  -downcase");
+        System.err.println("  -datestring");
+        System.err.println("  -numbertable name");
+        System.err.println("  -varchar2table name");
+        System.err.println("  -datetable name");
+        System.err.println("  -rawtable name");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws SQLException, IOException {
+        boolean downCasing = false;
+        boolean exportDateAsString = false;
+        String numberTableName = null;
+        String varchar2TableName = null;
+        String dateTableName = null;
+        String rawTableName = null;
+        ArrayList<String> params = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-downcase")) {
+                downCasing = true;
+            } else if (a.equals("-datestring")) {
+                exportDateAsString = true;
+            } else if (a.startsWith("-") && i + 1 < args.length) {
+                i++;
+                if (a.equals("-numbertable")) {
+                    numberTableName = args[i];
+                } else if (a.equals("-varchar2table")) {
+                    varchar2TableName = args[i];
+                } else if (a.equals("-datetable")) {
+                    dateTableName = args[i];
+                } else if (a.equals("-rawtable")) {
+                    rawTableName = args[i];
+                } else {
+                    usage();
+                }
+            } else if (a.startsWith("-")) {
+                usage();
+            } else {
+                params.add(a);
+            }
+        }
+        if (params.size() != 5) {
+            usage();
+        }
+        try (OracleConnection con = DriverManager.getConnection(params.get(0), params.get(1), params.get(2))
+                .unwrap(OracleConnection.class)) {
+            ProcedureCaller p = new ProcedureCaller(con, downCasing, exportDateAsString);
+            if (numberTableName != null) {
+                p.setNumberTableName(numberTableName);
+            }
+            if (varchar2TableName != null) {
+                p.setVarchar2TableName(varchar2TableName);
+            }
+            if (dateTableName != null) {
+                p.setDateTableName(dateTableName);
+            }
+            if (rawTableName != null) {
+                p.setRawTableName(rawTableName);
+            }
+            int n;
+            ArrayList<String> skipped = new ArrayList<>();
+            try (OutputStream out = new FileOutputStream(params.get(4))) {
+                n = p.writeSnapshot(params.get(3), out, skipped);
+            }
+            System.out.println("" + n + " procedures/functions written to " + params.get(4));
+            if (!skipped.isEmpty()) {
+                System.out.println("" + skipped.size() + " procedures/functions skipped:");
+                for (String s : skipped) {
+                    System.out.println("  " + s);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+
+ Copyright (c) 2015, Roland Averkamp, roland.averkamp.0@gmail.com
+
+ Permission to use, copy, modify, and/or distribute this software for any
+ purpose with or without fee is hereby granted, provided that the above
+ copyright notice and this permission notice appear in all copies.
+
+ THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+
+ */
+package spinat.javaplsql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+// annotation processor, writes the stub classes requested with PlsqlStubs.
+// It is not registered as a service, it must be given to javac:
+//   javac -processor spinat.javaplsql.StubProcessor -Ajavaplsql.snapshotDir=dir ...
+// The snapshot is written with SnapshotTool and checked in, the stubs must
+// be generated again when the procedures change.
+@SupportedAnnotationTypes("spinat.javaplsql.PlsqlStubs")
+@SupportedOptions("javaplsql.snapshotDir")
+public final class StubProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element e : roundEnv.getElementsAnnotatedWith(PlsqlStubs.class)) {
+            PlsqlStubs a = e.getAnnotation(PlsqlStubs.class);
+            String dir = processingEnv.getOptions().get("javaplsql.snapshotDir");
+            File snapshot = dir == null ? new File(a.snapshot()) : new File(dir, a.snapshot());
+            try {
+                String src = ProcedureCaller.genStubSource(snapshot, a.className(), Arrays.asList(a.procedures()));
+                String name = ProcedureCaller.class.getPackage().getName() + "." + a.className();
+                try (Writer w = processingEnv.getFiler().createSourceFile(name, e).openWriter()) {
+                    w.write(src);
+                }
+            } catch (IOException | RuntimeException ex) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "could not generate " + a.className() + ": " + ex.getMessage(), e);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package spinat.javaplsql;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import oracle.jdbc.OracleConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CallCoalescerTest {
+
+    public CallCoalescerTest() {
+    }
+
+    OracleConnection connection;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        Properties props = TestUtil.getProperties("config1.txt");
+        String user = props.getProperty("user1").toUpperCase();
+        connection = (OracleConnection) DriverManager.getConnection(props.getProperty("url"),
+                user, props.getProperty("pw1"));
+        HashMap<String, String> a = TestUtil.loadSnippets("snippets.txt");
+
+        Ddl.call(connection, a.get("p1_spec"));
+        Ddl.call(connection, a.get("p1_body"));
+
+        Ddl.createType(connection, "create type number_array as table of number;");
+        Ddl.createType(connection, "create type varchar2_array as table of varchar2(32767);");
+        Ddl.createType(connection, "create type date_array as table of date;");
+        Ddl.createType(connection, "create type raw_array as table of raw(32767);");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        final CallCoalescer c = new CallCoalescer(new ProcedureCaller(connection));
+        c.setWindowMicros(20000);
+        c.setMaxBatchSize(8);
+        ArrayList<Thread> threads = new ArrayList<>();
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int i = -2; i < 30; i++) {
+            final int x = i;
+            Thread t = new Thread(() -> {
+                try {
+                    Map<String, Object> a = new HashMap<>();
+                    a.put("X", x);
+                    try {
+                        Map<String, Object> res = c.call("P1.PBATCH", a);
+                        assertTrue(x >= 0);
+                        assertEquals(new BigDecimal(2 * x), res.get("Y"));
+                    } catch (SQLException e) {
+                        assertTrue(x < 0);
+                        assertEquals(20001, e.getErrorCode());
+                    }
+                } catch (Throwable ex) {
+                    synchronized (errors) {
+                        errors.add(ex);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.isEmpty());
+        assertEquals(32, c.getCalls());
+        assertTrue(c.getBatches() < 32);
+        long n = 0;
+        for (long h : c.getBatchSizeHistogram()) {
+            n += h;
+        }
+        assertEquals(c.getBatches(), n);
+    }
+
+    @Test
+    public void testErrorCodes() throws Exception {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        final CallCoalescer c = new CallCoalescer(new ProcedureCaller(connection));
+        c.setWindowMicros(20000);
+        c.setMaxBatchSize(3);
+        final int[] expected = new int[4];
+        for (int x = 1; x <= 3; x++) {
+            Map<String, Object> a = new HashMap<>();
+            a.put("X", x);
+            try {
+                p.call("P1.PBATCH_ERROR", a);
+                fail("expected an exception");
+            } catch (SQLException e) {
+                expected[x] = e.getErrorCode();
+            }
+        }
+        // no data found, an unhandled user-defined exception
+        assertEquals(1403, expected[1]);
+        assertEquals(6510, expected[2]);
+        assertEquals(20002, expected[3]);
+        final int[] codes = new int[4];
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            final int x = i;
+            Thread t = new Thread(() -> {
+                Map<String, Object> a = new HashMap<>();
+                a.put("X", x);
+                try {
+                    c.call("P1.PBATCH_ERROR", a);
+                } catch (SQLException e) {
+                    codes[x] = e.getErrorCode();
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertArrayEquals(expected, codes);
+    }
+
+    @Test
+    public void testSingleCall() throws SQLException {
+        CallCoalescer c = new CallCoalescer(new ProcedureCaller(connection));
+        c.setWindowMicros(0);
+        Map<String, Object> a = new HashMap<>();
+        a.put("N", 17);
+        a.put("V", "xyz");
+        a.put("D", new java.util.Date(2001, 12, 1));
+        // a procedure with cursors is called directly
+        assertEquals(new ProcedureCaller(connection).call("p1.pcursor1", a), c.call("p1.pcursor1", a));
+        assertEquals(1, c.getBatchSizeHistogram()[0]);
+    }
+}
@@ -4,12 +4,19 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import oracle.jdbc.OracleConnection;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -135,6 +142,47 @@ public class FuncTest {
         test3Base(10);
     }
 
+    // a table of records with scalar fields is sent by column, null values
+    // and null rows must not shift the columns
+    @Test
+    public void testTableColumnsNulls() throws SQLException {
+        for (boolean generate : new boolean[]{false, true}) {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            p.setGenerateMarshallers(generate);
+            ArrayList<Map<String, Object>> l = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                if (i % 10 == 9) {
+                    l.add(null);
+                    continue;
+                }
+                Map<String, Object> a = new HashMap<>();
+                a.put("X", i % 3 == 0 ? null : new BigDecimal(i));
+                a.put("Y", i % 5 == 0 ? null : "x" + i);
+                a.put("Z", new Date());
+                l.add(a);
+            }
+            HashMap<String, Object> args = new HashMap<>();
+            args.put("A", l);
+            ArrayList<Map<String, Object>> l2 = (ArrayList<Map<String, Object>>) p.call("P1.P3", args).get("B");
+            assertEquals(100, l2.size());
+            for (int i = 0; i < l.size(); i++) {
+                Map<String, Object> m = l.get(i);
+                Map<String, Object> m2 = l2.get(i);
+                if (m == null || m.get("X") == null) {
+                    assertNull(m2.get("X"));
+                } else {
+                    assertEquals(((BigDecimal) m.get("X")).add(BigDecimal.ONE), m2.get("X"));
+                }
+                if (m == null || m.get("Y") == null) {
+                    assertNull(m2.get("Y"));
+                } else {
+                    assertEquals("" + m.get("Y") + m.get("Y"), m2.get("Y"));
+                }
+                assertNotNull(m2.get("Z"));
+            }
+        }
+    }
+
     @Test
     public void test4() throws SQLException {
         HashMap<String, Object> ar = new HashMap<>();
@@ -289,6 +337,38 @@ public class FuncTest {
         assertEquals(0, ((ArrayList) b.value).size());
     }
 
+    public static class P5Args {
+
+        List<String> a;
+    }
+
+    public static class P5Result {
+
+        List<String> b;
+    }
+
+    // tables of scalars are copied as a whole
+    @Test
+    public void testScalarTable() throws SQLException {
+        ArrayList<String> l = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            l.add(i % 7 == 0 ? null : "x" + i);
+        }
+        for (boolean generate : new boolean[]{false, true}) {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            p.setGenerateMarshallers(generate);
+            Box<Object> b = new Box<>();
+            p.callPositional("p1.p5", l, b);
+            assertEquals(l, b.value);
+            HashMap<String, Object> args = new HashMap<>();
+            args.put("A", l);
+            assertEquals(l, p.call("p1.p5", args).get("B"));
+            P5Args a5 = new P5Args();
+            a5.a = l;
+            assertEquals(l, p.call("p1.p5", a5, P5Result.class).b);
+        }
+    }
+
     // test various methods to write a strored procedure
     @Test
     public void testName1() throws SQLException {
@@ -424,6 +504,167 @@ public class FuncTest {
         assertEquals("X", l3.get(0).get("DUMMY"));
     }
     
+    @Test
+    public void TestStreamingCursor() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        p.setCursorFetchSize(1);
+        Date dat = new Date(2001, 12, 1);
+        HashMap<String, Object> args = new HashMap<>();
+        args.put("N", 17);
+        args.put("V", "xyz");
+        args.put("D", dat);
+        try (ProcedureCaller.StreamingResult res = p.callStreaming("p1.pcursor1", args)) {
+            ProcedureCaller.RowCursor c = res.getCursor("C");
+            assertTrue(c.hasNext());
+            assertEquals("a", c.next().get("A"));
+            Map<String, Object> r2 = c.next();
+            assertEquals(r2.get("A"), "xyz");
+            assertEquals(((BigDecimal) r2.get("B")).intValue(), 17);
+            assertEquals(r2.get("C"), dat);
+            assertFalse(c.hasNext());
+        }
+        try (ProcedureCaller.StreamingResult res = p.callStreaming("p1.pcursor1", args)) {
+            assertEquals(2, res.getCursor("C").stream().count());
+        }
+        // the statement can be used again after the cursors are closed
+        assertEquals(2, ((List) p.call("p1.pcursor1", args).get("C")).size());
+    }
+
+    @Test
+    public void TestStreamingCursorInCursor() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        try (ProcedureCaller.StreamingResult res = p.callStreaming("p1.cursor_in_cursor_in_cursor", new HashMap<String, Object>())) {
+            ProcedureCaller.RowCursor c = res.getCursor("C");
+            Map<String, Object> r = c.next();
+            ProcedureCaller.RowCursor c2 = (ProcedureCaller.RowCursor) r.get("DUMMY2");
+            Map<String, Object> r2 = c2.next();
+            assertEquals("X", r2.get("DUMMY"));
+            ProcedureCaller.RowCursor c3 = (ProcedureCaller.RowCursor) r2.get("DUMMY3");
+            assertEquals("X", c3.next().get("DUMMY"));
+            assertFalse(c.hasNext());
+            assertFalse(c2.hasNext());
+        }
+    }
+
+    @Test
+    public void TestFunctionCursor() throws SQLException {
+        for (int fs : new int[]{0, 3}) {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            p.setCursorFetchSize(fs);
+            for (int l : new int[]{0, 4000}) {
+                HashMap<String, Object> args = new HashMap<>();
+                args.put("N", 10);
+                args.put("L", l);
+                Map<String, Object> res = p.call("p1.fcursor1", args);
+                List<Map<String, Object>> rows = (List<Map<String, Object>>) res.get("RETURN");
+                assertEquals(10, rows.size());
+                for (int i = 0; i < 10; i++) {
+                    Map<String, Object> r = rows.get(i);
+                    assertEquals(i + 1, ((BigDecimal) r.get("A")).intValue());
+                    assertEquals("x" + (i + 1), r.get("B"));
+                    assertEquals(new Date(2001 - 1900, 0, 2 + i), r.get("C"));
+                    if (l > 0) {
+                        assertEquals(l, ((String) r.get("D")).length());
+                    }
+                }
+            }
+            HashMap<String, Object> args = new HashMap<>();
+            args.put("N", 0);
+            args.put("L", 0);
+            assertTrue(((List) p.call("p1.fcursor1", args).get("RETURN")).isEmpty());
+        }
+    }
+
+    @Test
+    public void TestCursorRoundTrips() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        HashMap<String, Object> args = new HashMap<>();
+        args.put("N", 50);
+        args.put("L", 0);
+        // without a fixed fetch size the rows of earlier calls are used
+        for (int i = 0; i < 3; i++) {
+            p.call("p1.fcursor1", args);
+        }
+        long before = p.getRoundTrips();
+        assertEquals(50, ((List) p.call("p1.fcursor1", args).get("RETURN")).size());
+        // the call and one fetch
+        assertEquals(2, p.getLastRoundTrips());
+        assertEquals(before + 2, p.getRoundTrips());
+        try (ProcedureCaller.StreamingResult r = p.callStreaming("p1.fcursor1", args)) {
+            assertEquals(1, p.getLastRoundTrips());
+            assertEquals(50, r.getCursor("RETURN").stream().count());
+        }
+        assertEquals(before + 4, p.getRoundTrips());
+        // the default prefetch of the connection
+        p.setCursorFetchMemory(0);
+        p.call("p1.fcursor1", args);
+        assertEquals(1 + 50 / connection.getDefaultRowPrefetch() + 1, p.getLastRoundTrips());
+        // the rows of one fetch must fit into the memory
+        p.setCursorFetchMemory(500);
+        p.call("p1.fcursor1", args);
+        assertTrue(p.getLastRoundTrips() > 2);
+        p.setCursorFetchMemory(1 << 20);
+        p.setCursorFetchSize(5);
+        p.call("p1.fcursor1", args);
+        assertEquals(12, p.getLastRoundTrips());
+    }
+
+    @Test
+    public void TestFunctionTypedCursor() throws SQLException {
+        for (int fs : new int[]{0, 3}) {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            p.setCursorFetchSize(fs);
+            ProcedureCaller pg = new ProcedureCaller(connection);
+            pg.setCursorFetchSize(fs);
+            pg.setGenerateMarshallers(true);
+            for (int n : new int[]{0, 3, 7}) {
+                HashMap<String, Object> args = new HashMap<>();
+                args.put("N", n);
+                Map<String, Object> res = p.call("p1.fcursor2", args);
+                List<Map<String, Object>> rows = (List<Map<String, Object>>) res.get("RETURN");
+                assertEquals(n, rows.size());
+                for (int i = 0; i < n; i++) {
+                    Map<String, Object> r = rows.get(i);
+                    assertEquals(i + 1, ((BigDecimal) r.get("N")).intValue());
+                    assertEquals("x" + (i + 1), r.get("V"));
+                    assertEquals(new Date(2001 - 1900, 0, 2 + i), r.get("D"));
+                }
+                assertEquals(res, pg.call("p1.fcursor2", args));
+                assertEquals(rows, p.callFunction("p1.fcursor2", args, List.class));
+                try (ProcedureCaller.StreamingResult sr = p.callStreaming("p1.fcursor2", args)) {
+                    assertEquals(n, sr.getCursor("RETURN").stream().count());
+                }
+            }
+        }
+    }
+
+    public static class CursorRow {
+
+        int n;
+        String v;
+        LocalDateTime d;
+    }
+
+    public static class PCursor2Result {
+
+        List<CursorRow> c;
+    }
+
+    @Test
+    public void TestTypedCursorObjects() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        Date dat = new Date(2001, 12, 1);
+        HashMap<String, Object> args = new HashMap<>();
+        args.put("N", 17);
+        args.put("V", "xyz");
+        args.put("D", dat);
+        PCursor2Result r = p.call("p1.pcursor2", args, PCursor2Result.class);
+        assertEquals(2, r.c.size());
+        assertEquals(17, r.c.get(1).n);
+        assertEquals("xyz", r.c.get(1).v);
+        assertEquals(new java.sql.Timestamp(dat.getTime()).toLocalDateTime(), r.c.get(1).d);
+    }
+
     @Test
     public void TestIndexBy() throws SQLException {
         int n = 20;
@@ -541,4 +782,365 @@ public class FuncTest {
             assertTrue(b[i] == b2[i]);
         }
     }
+
+    // the generated marshallers must give the same results
+    @Test
+    public void testGeneratedMarshallers() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        ProcedureCaller pg = new ProcedureCaller(connection);
+        pg.setGenerateMarshallers(true);
+
+        HashMap<String, Object> ar = new HashMap<>();
+        ArrayList l0 = new ArrayList<>();
+        for (int j = 0; j < 3; j++) {
+            ArrayList<Map<String, Object>> l = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                Map<String, Object> a = new HashMap();
+                a.put("X", new BigDecimal(i));
+                a.put("Y", "x" + i);
+                a.put("Z", new Date(2013, 5, 1));
+                l.add(a);
+            }
+            l0.add(l);
+        }
+        ar.put("A", l0);
+        assertEquals(p.call("P1.P4", ar), pg.call("P1.P4", ar));
+        // hidden classes need Java 15
+        if (!(pg.getMarshallerFailure("P1.P4") instanceof UnsupportedOperationException)) {
+            assertNull(pg.getMarshallerFailure("P1.P4"));
+            assertTrue(pg.hasMarshaller("P1.P4"));
+        }
+
+        Map<String, Object> args = new HashMap<>();
+        TreeMap<String, String> ai = new TreeMap<>();
+        TreeMap<Integer, String> bi = new TreeMap<>();
+        for (int i = 0; i < 10; i++) {
+            ai.put("k" + i, "v" + i);
+            bi.put(i, "v" + i);
+        }
+        args.put("AI", ai);
+        args.put("BI", bi);
+        assertEquals(p.call("p1.pindex_tab", args), pg.call("p1.pindex_tab", args));
+
+        HashMap<String, Object> cargs = new HashMap<>();
+        cargs.put("N", 17);
+        cargs.put("V", "xyz");
+        cargs.put("D", new Date(2001, 12, 1));
+        assertEquals(p.call("p1.pcursor1", cargs), pg.call("p1.pcursor1", cargs));
+
+        HashMap<String, Object> bad = new HashMap<>();
+        HashMap<String, Object> rec = new HashMap<>();
+        rec.put("X", 12);
+        bad.put("A", rec);
+        try {
+            pg.call("P1.P2", bad);
+            fail("expected a ConversionException");
+        } catch (ProcedureCaller.ConversionException e) {
+        }
+    }
+
+    @Test
+    public void testLazyResults() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        ProcedureCaller pl = new ProcedureCaller(connection);
+        pl.setLazyResults(true);
+
+        HashMap<String, Object> ar = new HashMap<>();
+        Map<String, Object> a = new HashMap();
+        a.put("X", 12);
+        a.put("Y", "x");
+        a.put("Z", new Date(2013, 5, 1));
+        ar.put("A", a);
+        Map<String, Object> res = pl.call("P1.P2", ar);
+        assertEquals(p.call("P1.P2", ar), res);
+        assertTrue(res.containsKey("B"));
+        assertFalse(res.containsKey("A"));
+
+        HashMap<String, Object> cargs = new HashMap<>();
+        cargs.put("N", 17);
+        cargs.put("V", "xyz");
+        cargs.put("D", new Date(2001, 12, 1));
+        assertEquals(p.call("p1.pcursor1", cargs), pl.call("p1.pcursor1", cargs));
+
+        Map<String, Object> fa = new HashMap<>();
+        fa.put("A", -123);
+        fa.put("B", "rote gruetze");
+        fa.put("C", new java.sql.Timestamp(2014, 12, 3, 23, 45, 1, 0));
+        Map<String, Object> fr = pl.call("p1.f7", fa);
+        assertEquals(p.call("p1.f7", fa), fr);
+        assertEquals(1, fr.size());
+
+        pl.setGenerateMarshallers(true);
+        assertEquals(p.call("P1.P2", ar), pl.call("P1.P2", ar));
+    }
+
+    @Test
+    public void testBatch() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        ArrayList<Map<String, Object>> args = new ArrayList<>();
+        for (int i = -1; i < 4; i++) {
+            Map<String, Object> a = new HashMap<>();
+            a.put("X", i);
+            args.add(a);
+        }
+        List<ProcedureCaller.BatchResult> res = p.callBatch("P1.PBATCH", args);
+        assertEquals(5, res.size());
+        assertFalse(res.get(0).isOk());
+        assertEquals(-20001, res.get(0).getErrorCode());
+        assertTrue(res.get(0).getErrorMessage().contains("negative"));
+        assertNull(res.get(0).getValues());
+        for (int i = 1; i < 5; i++) {
+            assertTrue(res.get(i).isOk());
+            assertEquals(new BigDecimal(2 * (i - 1)), res.get(i).getValues().get("Y"));
+        }
+        assertEquals(1, p.getLastRoundTrips());
+
+        p.setBatchSize(2);
+        assertEquals(5, p.callBatch("P1.PBATCH", args).size());
+        assertEquals(3, p.getLastRoundTrips());
+
+        ArrayList<Map<String, Object>> args3 = new ArrayList<>();
+        for (int k = 0; k < 3; k++) {
+            HashMap<String, Object> ar = new HashMap<>();
+            ArrayList<Map<String, Object>> l = new ArrayList<>();
+            for (int i = 0; i < k * 10; i++) {
+                Map<String, Object> a = new HashMap<>();
+                a.put("X", new BigDecimal(i));
+                a.put("Y", "x" + i);
+                a.put("Z", new Date());
+                l.add(a);
+            }
+            ar.put("A", l);
+            args3.add(ar);
+        }
+        for (boolean generate : new boolean[]{false, true}) {
+            p.setGenerateMarshallers(generate);
+            List<ProcedureCaller.BatchResult> r3 = p.callBatch("P1.P3", args3);
+            for (int k = 0; k < 3; k++) {
+                assertEquals(p.call("P1.P3", args3.get(k)), r3.get(k).getValues());
+            }
+        }
+    }
+
+    @Test
+    public void testCallAsync() throws Exception {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        ArrayList<CompletableFuture<Map<String, Object>>> fs = new ArrayList<>();
+        for (int i = -1; i < 100; i++) {
+            Map<String, Object> a = new HashMap<>();
+            a.put("X", i);
+            fs.add(p.callAsync("P1.PBATCH", a));
+        }
+        try {
+            fs.get(0).get();
+            fail("expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+            assertEquals(20001, ((SQLException) e.getCause()).getErrorCode());
+        }
+        for (int i = 1; i < fs.size(); i++) {
+            assertEquals(new BigDecimal(2 * (i - 1)), fs.get(i).get().get("Y"));
+        }
+        ExecutorService ex = Executors.newFixedThreadPool(4);
+        try {
+            Map<String, Object> a = new HashMap<>();
+            a.put("X", 21);
+            assertEquals(new BigDecimal(42), p.callAsync("P1.PBATCH", a, ex).get().get("Y"));
+            Box<Object> y2 = new Box<>();
+            p.callPositionalAsync("P1.PBATCH", ex, 5, y2).get();
+            assertEquals(new BigDecimal(10), y2.value);
+        } finally {
+            ex.shutdown();
+        }
+        Box<Object> y = new Box<>();
+        p.callPositionalAsync("P1.PBATCH", 4, y).get();
+        assertEquals(new BigDecimal(8), y.value);
+    }
+
+    @Test
+    public void testPrepare() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        ProcedureCaller.PreparedProcedure pp = p.prepare("P1.P");
+        assertEquals(6, pp.getArgumentKeys().size());
+        for (int i = 0; i < 10; i++) {
+            HashMap<String, Object> ar = new HashMap<>();
+            ar.put("XI", i);
+            ar.put("YI", "x");
+            ar.put("ZI", new Date());
+            assertEquals(new BigDecimal(i + 1), pp.invoke(ar).get("XO"));
+        }
+        Box<Object> y = new Box<>();
+        p.prepare("P1.PBATCH").invoke(7, y);
+        assertEquals(new BigDecimal(14), y.value);
+
+        p.setGenerateMarshallers(true);
+        ProcedureCaller.PreparedProcedure pg = p.prepare("P1.P3", 1);
+        HashMap<String, Object> ar = new HashMap<>();
+        ArrayList<Map<String, Object>> l = new ArrayList<>();
+        Map<String, Object> a = new HashMap<>();
+        a.put("X", 1);
+        a.put("Y", "y");
+        a.put("Z", new Date());
+        l.add(a);
+        ar.put("A", l);
+        assertEquals(p.call("P1.P3", ar), pg.invoke(ar));
+        try {
+            p.prepare("P1.P3", 2);
+            fail("expected an exception");
+        } catch (RuntimeException e) {
+        }
+    }
+
+    public static class PResult {
+
+        BigDecimal xo;
+        String yo;
+        Date zo;
+    }
+
+    public interface P1Binding {
+
+        PResult p(int xi, String yi, Date zi) throws SQLException;
+
+        R1 p2(R1 a) throws SQLException;
+
+        List<R1> p3(List<R1> a) throws SQLException;
+
+        R1 f7(int a, String b, Date c) throws SQLException;
+
+        void raise_error(int errnum, String txt) throws SQLException;
+
+        // not bound, it calls the bound methods
+        default String f7y(String b) throws SQLException {
+            return f7(1, b, null).y;
+        }
+    }
+
+    public interface BadBinding {
+
+        void p2(R1 a, R1 b) throws SQLException;
+    }
+
+    @Test
+    public void testBind() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        P1Binding b = p.bind(P1Binding.class, "P1");
+        PResult r = b.p(12, "x", new Date());
+        assertEquals(new BigDecimal(13), r.xo);
+        R1 a = new R1();
+        a.x = 12;
+        a.y = "x";
+        R1 r2 = b.p2(a);
+        assertEquals(13, r2.x);
+        assertEquals("xx", r2.y);
+        List<R1> l = b.p3(Arrays.asList(a, a));
+        assertEquals(2, l.size());
+        assertEquals("xx", l.get(1).y);
+        assertEquals("abc", b.f7(1, "abc", null).y);
+        assertEquals("def", b.f7y("def"));
+        try {
+            b.raise_error(-20001, "bound");
+            fail("expected an exception");
+        } catch (SQLException e) {
+            assertEquals(20001, e.getErrorCode());
+        }
+        try {
+            p.bind(BadBinding.class, "P1");
+            fail("expected an exception");
+        } catch (RuntimeException e) {
+        }
+    }
+
+    public static class R1 {
+
+        int x;
+        String y;
+        LocalDateTime z;
+    }
+
+    public static class P2Args {
+
+        R1 a;
+    }
+
+    public static class P2Result {
+
+        R1 b;
+    }
+
+    public static class P3Args {
+
+        List<R1> a;
+    }
+
+    public static class P3Result {
+
+        R1[] b;
+    }
+
+    public static class F7Args {
+
+        int a;
+        String b;
+        Date c;
+    }
+
+    // a and a_ are the same name if underscores are ignored
+    public static class F7ClashArgs {
+
+        int a;
+        int a_;
+        String b;
+        Date c;
+    }
+
+    @Test
+    public void testObjects() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        P2Args a2 = new P2Args();
+        a2.a = new R1();
+        a2.a.x = 12;
+        a2.a.y = "x";
+        a2.a.z = LocalDateTime.now();
+        P2Result r2 = p.call("P1.P2", a2, P2Result.class);
+        assertEquals(13, r2.b.x);
+        assertEquals("xx", r2.b.y);
+
+        P3Args a3 = new P3Args();
+        a3.a = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            R1 r = new R1();
+            r.x = i;
+            r.y = "x" + i;
+            a3.a.add(r);
+        }
+        P3Result r3 = p.call("P1.P3", a3, P3Result.class);
+        assertEquals(10, r3.b.length);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, r3.b[i].x);
+            assertEquals("x" + i + "x" + i, r3.b[i].y);
+        }
+
+        F7Args a7 = new F7Args();
+        a7.a = 17;
+        a7.b = "abc";
+        a7.c = new Date(2001 - 1900, 11, 1);
+        R1 r7 = p.callFunction("P1.F7", a7, R1.class);
+        assertEquals(17, r7.x);
+        assertEquals("abc", r7.y);
+        assertEquals(LocalDateTime.of(2001, 12, 1, 0, 0), r7.z);
+
+        Map<String, Object> m7 = new HashMap<>();
+        m7.put("A", 1);
+        m7.put("B", "b");
+        m7.put("C", null);
+        assertEquals("b", p.callFunction("P1.F7", m7, R1.class).y);
+
+        try {
+            p.callFunction("P1.F7", new F7ClashArgs(), R1.class);
+            fail("ambiguous properties are not detected");
+        } catch (ProcedureCaller.ConversionException e) {
+            assertTrue(e.getMessage().contains("a_"));
+        }
+    }
 }
@@ -0,0 +1,329 @@
+package spinat.javaplsql;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import oracle.jdbc.OracleConnection;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetadataCacheTest {
+
+    public MetadataCacheTest() {
+    }
+
+    OracleConnection getConnection() throws SQLException {
+        Properties props = TestUtil.getProperties("config1.txt");
+        String user = props.getProperty("user1").toUpperCase();
+        return (OracleConnection) DriverManager.getConnection(props.getProperty("url"),
+                user, props.getProperty("pw1"));
+    }
+
+    OracleConnection connection;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        connection = getConnection();
+        HashMap<String, String> a = TestUtil.loadSnippets("snippets.txt");
+
+        Ddl.call(connection, a.get("p1_spec"));
+        Ddl.call(connection, a.get("p1_body"));
+
+        Ddl.createType(connection, "create type number_array as table of number;");
+        Ddl.createType(connection, "create type varchar2_array as table of varchar2(32767);");
+        Ddl.createType(connection, "create type date_array as table of date;");
+        Ddl.createType(connection, "create type raw_array as table of raw(32767);");
+        ProcedureCaller.clearMetadataCache();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void testManyCallersColdProcedure() throws Exception {
+        ArrayList<Thread> threads = new ArrayList<>();
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Thread t = new Thread(() -> {
+                try (OracleConnection con = getConnection()) {
+                    HashMap<String, Object> ar = new HashMap<>();
+                    ar.put("XI", 12);
+                    ar.put("YI", "x");
+                    ar.put("ZI", new Date());
+                    Map<String, Object> res = new ProcedureCaller(con).call("P1.P", ar);
+                    assertEquals(new BigDecimal(13), res.get("XO"));
+                } catch (Throwable ex) {
+                    synchronized (errors) {
+                        errors.add(ex);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testAliases() throws SQLException {
+        Map<String, Object> a = new HashMap<>();
+        new ProcedureCaller(connection).call("p1.no_args", a);
+        new ProcedureCaller(connection).call("\"P1\".\"NO_ARGS\"", a);
+        new ProcedureCaller(connection).call("p1.\"NO_ARGS\"", a);
+    }
+
+    @Test
+    public void testMissingProcedureIsCached() throws SQLException {
+        Ddl.call(connection, "create or replace procedure cache_test_proc as begin null; end;");
+        Ddl.call(connection, "drop procedure cache_test_proc");
+        Map<String, Object> a = new HashMap<>();
+        Exception ex = null;
+        try {
+            new ProcedureCaller(connection).call("cache_test_proc", a);
+        } catch (Exception e) {
+            ex = e;
+        }
+        assertNotNull(ex);
+        Ddl.call(connection, "create or replace procedure cache_test_proc as begin null; end;");
+        ex = null;
+        try {
+            new ProcedureCaller(connection).call("cache_test_proc", a);
+        } catch (Exception e) {
+            ex = e;
+        }
+        // still remembered as missing
+        assertNotNull(ex);
+        ProcedureCaller.clearMetadataCache();
+        new ProcedureCaller(connection).call("cache_test_proc", a);
+        Ddl.call(connection, "drop procedure cache_test_proc");
+    }
+
+    @Test
+    public void testClearReachesExistingCallers() throws Exception {
+        Ddl.call(connection, "create or replace procedure cache_test_proc2(x number) as begin null; end;");
+        ProcedureCaller p = new ProcedureCaller(connection);
+        CallCoalescer cc = new CallCoalescer(p);
+        Map<String, Object> a = new HashMap<>();
+        a.put("X", 1);
+        assertTrue(p.call("cache_test_proc2", a).isEmpty());
+        assertTrue(cc.call("cache_test_proc2", a).isEmpty());
+        Ddl.call(connection, "create or replace procedure cache_test_proc2(x number, y out number) as "
+                + "begin y := x + 1; end;");
+        ProcedureCaller.clearMetadataCache();
+        assertEquals(new BigDecimal(2), p.call("cache_test_proc2", a).get("Y"));
+        assertEquals(new BigDecimal(2), cc.call("cache_test_proc2", a).get("Y"));
+        Ddl.call(connection, "drop procedure cache_test_proc2");
+    }
+
+    @Test
+    public void testDescribeWholePackage() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        p.setDescribeWholePackage(true);
+        HashMap<String, Object> ar = new HashMap<>();
+        ar.put("XI", 12);
+        ar.put("YI", "x");
+        ar.put("ZI", new Date());
+        Map<String, Object> res = p.call("P1.P", ar);
+        assertEquals(new BigDecimal(13), res.get("XO"));
+        p.call("p1.no_args", new HashMap<String, Object>());
+
+        Map<String, Object> args = new HashMap<>();
+        TreeMap<String, String> ai = new TreeMap<>();
+        ai.put("k", "v");
+        args.put("AI", ai);
+        TreeMap<Integer, String> bi = new TreeMap<>();
+        bi.put(1, "v");
+        args.put("BI", bi);
+        res = p.call("p1.pindex_tab", args);
+        assertEquals("vy", ((Map) res.get("AO")).get("xk"));
+        assertEquals("vy", ((Map) res.get("BO")).get(2));
+    }
+
+    @Test
+    public void testDescribePackage() throws SQLException {
+        ProcedureCaller p = new ProcedureCaller(connection);
+        p.describePackage("p1");
+        int queries = ProcedureCaller.dictionaryQueries.get();
+        Map<String, Object> a = new HashMap<>();
+        a.put("X", true);
+        Map<String, Object> m = p.call("p1.p8", a);
+        assertEquals(Boolean.FALSE, m.get("Y"));
+        HashMap<String, Object> ar = new HashMap<>();
+        ar.put("XI", 12);
+        ar.put("YI", "x");
+        ar.put("ZI", new Date());
+        Map<String, Object> res = new ProcedureCaller(connection).call("P1.P", ar);
+        assertEquals(new BigDecimal(13), res.get("XO"));
+        assertEquals(queries, ProcedureCaller.dictionaryQueries.get());
+    }
+
+    @Test
+    public void testSnapshot() throws SQLException, IOException {
+        Properties props = TestUtil.getProperties("config1.txt");
+        String schema = props.getProperty("user1").toUpperCase();
+        File f = File.createTempFile("javaplsql", ".snapshot");
+        try {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            int n;
+            ArrayList<String> skipped = new ArrayList<>();
+            try (OutputStream out = new FileOutputStream(f)) {
+                n = p.writeSnapshot(schema, out, skipped);
+            }
+            assertTrue(n > 0);
+            for (String s : skipped) {
+                assertTrue(s, !s.startsWith(schema + ".P1.P:"));
+            }
+            ProcedureCaller.clearMetadataCache();
+            ProcedureCaller p2 = new ProcedureCaller(connection);
+            assertTrue(p2.loadSnapshot(f) > 0);
+            HashMap<String, Object> ar = new HashMap<>();
+            ar.put("XI", 12);
+            ar.put("YI", "x");
+            ar.put("ZI", new Date());
+            Map<String, Object> res = p2.call("P1.P", ar);
+            assertEquals(new BigDecimal(13), res.get("XO"));
+
+            // different settings, the snapshot can not be used
+            Exception ex = null;
+            try {
+                new ProcedureCaller(connection, true, false).loadSnapshot(f);
+            } catch (RuntimeException e) {
+                ex = e;
+            }
+            assertNotNull(ex);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testStubs() throws Exception {
+        Properties props = TestUtil.getProperties("config1.txt");
+        String schema = props.getProperty("user1").toUpperCase();
+        File f = File.createTempFile("javaplsql", ".snapshot");
+        try {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            try (OutputStream out = new FileOutputStream(f)) {
+                p.writeSnapshot(schema, out);
+            }
+            String src = ProcedureCaller.genStubSource(f, "P1TestStubs",
+                    Arrays.asList("P1.P", "p1.p3", "p1.pcursor1"));
+            // the stub class is defined as a hidden class, this needs Java 15
+            Assume.assumeTrue(MarshallerCompiler.hiddenClassesAvailable());
+            Class<?> c = MarshallerCompiler.compile("spinat.javaplsql.P1TestStubs", src);
+
+            HashMap<String, Object> ar = new HashMap<>();
+            ar.put("XI", 12);
+            ar.put("YI", "x");
+            ar.put("ZI", new Date());
+            Method m = c.getMethod("p", ProcedureCaller.class, Map.class);
+            assertEquals(p.call("P1.P", ar), m.invoke(null, p, ar));
+
+            HashMap<String, Object> ar3 = new HashMap<>();
+            ArrayList<Map<String, Object>> l = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Map<String, Object> a = new HashMap<>();
+                a.put("X", new BigDecimal(i));
+                a.put("Y", "x" + i);
+                a.put("Z", new Date());
+                l.add(a);
+            }
+            ar3.put("A", l);
+            Method m3 = c.getMethod("p3", ProcedureCaller.class, Map.class);
+            assertEquals(p.call("P1.P3", ar3), m3.invoke(null, p, ar3));
+
+            HashMap<String, Object> cargs = new HashMap<>();
+            cargs.put("N", 17);
+            cargs.put("V", "xyz");
+            cargs.put("D", new Date(2001, 12, 1));
+            Method mc = c.getMethod("pcursor1", ProcedureCaller.class, Map.class);
+            assertEquals(p.call("p1.pcursor1", cargs), mc.invoke(null, p, cargs));
+
+            ProcedureCaller p2 = new ProcedureCaller(connection);
+            p2.setNumberTableName("NUMBER_ARRAY_2");
+            try {
+                m.invoke(null, p2, ar);
+                fail("expected an exception");
+            } catch (InvocationTargetException e) {
+                assertTrue(e.getCause().getMessage().contains("settings"));
+            }
+
+            try {
+                ProcedureCaller.genStubSource(f, "X", Arrays.asList("p1.does_not_exist"));
+                fail("expected an exception");
+            } catch (RuntimeException e) {
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    int compileWithStubProcessor(Path dir, String procedure) throws IOException {
+        Path src = dir.resolve("Calls.java");
+        String code = "@spinat.javaplsql.PlsqlStubs(snapshot = \"p1.snapshot\", className = \"P1ProcessorStubs\",\n"
+                + "        procedures = {\"" + procedure + "\"})\n"
+                + "class Calls {\n"
+                + "    static Object use(spinat.javaplsql.ProcedureCaller pc) throws java.sql.SQLException {\n"
+                + "        return spinat.javaplsql.P1ProcessorStubs.p3(pc, new java.util.HashMap<String, Object>());\n"
+                + "    }\n"
+                + "}\n";
+        Files.write(src, code.getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        return compiler.run(null, null, null,
+                "-processor", "spinat.javaplsql.StubProcessor",
+                "-Ajavaplsql.snapshotDir=" + dir,
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", dir.toString(),
+                src.toString());
+    }
+
+    @Test
+    public void testStubProcessor() throws Exception {
+        Properties props = TestUtil.getProperties("config1.txt");
+        String schema = props.getProperty("user1").toUpperCase();
+        Path dir = Files.createTempDirectory("javaplsql");
+        try {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            try (OutputStream out = new FileOutputStream(dir.resolve("p1.snapshot").toFile())) {
+                p.writeSnapshot(schema, out);
+            }
+            assertEquals(0, compileWithStubProcessor(dir, "p1.p3"));
+            assertTrue(Files.exists(dir.resolve("spinat/javaplsql/P1ProcessorStubs.class")));
+            assertTrue(Files.exists(dir.resolve("Calls.class")));
+
+            assertTrue(compileWithStubProcessor(dir, "p1.does_not_exist") != 0);
+        } finally {
+            try (Stream<Path> s = Files.walk(dir)) {
+                s.sorted(Comparator.reverseOrder()).forEach(x -> x.toFile().delete());
+            }
+        }
+    }
+}
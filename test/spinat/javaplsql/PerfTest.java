@@ -2,11 +2,14 @@ package spinat.javaplsql;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.CallableStatement;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import oracle.jdbc.OracleConnection;
@@ -90,7 +93,7 @@ public class PerfTest {
         }
     }
 
-    void sizeTest(int rec_size, int args_size) throws SQLException {
+    void createP2(int rec_size, int args_size) throws SQLException {
         StringBuilder sb = new StringBuilder();
         sb.append("create or replace package p2 as\n")
                 .append("type r is record (\n");
@@ -129,6 +132,9 @@ public class PerfTest {
         sb.append("end;\n");
         sb.append("end;\n");
         Ddl.call(connection, sb.toString());
+    }
+
+    HashMap<String, Object> p2Args(int rec_size, int args_size) {
         HashMap<String, Object> args = new HashMap<>();
         HashMap<String, Object> m = new HashMap<>();
         for (int i = 0; i < rec_size; i++) {
@@ -139,7 +145,12 @@ public class PerfTest {
         for (int i = 0; i < args_size; i++) {
             args.put("IN" + i, m);
         }
-        Map<String, Object> res = new ProcedureCaller(connection).call("P2.P", args);
+        return args;
+    }
+
+    void sizeTest(int rec_size, int args_size) throws SQLException {
+        createP2(rec_size, args_size);
+        Map<String, Object> res = new ProcedureCaller(connection).call("P2.P", p2Args(rec_size, args_size));
         System.out.println(res);
     }
 
@@ -178,4 +189,103 @@ public class PerfTest {
         perfTest(1);
     }
 
+    @Test
+    public void bigTableTest() throws SQLException {
+        long l = System.currentTimeMillis();
+        test3Base(50000);
+        System.out.println("50000 rows: " + (System.currentTimeMillis() - l));
+    }
+
+    // the CPU time of the session on the server in 1/100 s
+    long serverCpuTime() throws SQLException {
+        try (CallableStatement cs = connection.prepareCall("begin ? := dbms_utility.get_cpu_time; end;")) {
+            cs.registerOutParameter(1, Types.NUMERIC);
+            cs.execute();
+            return cs.getLong(1);
+        }
+    }
+
+    // the time spent on the server is mostly the generated block packing
+    // and unpacking the arrays, run this with older versions to compare
+    @Test
+    public void serverTimeTest() throws SQLException {
+        for (int n : new int[]{1000, 100000}) {
+            long c = serverCpuTime();
+            long l = System.currentTimeMillis();
+            test3Base(n);
+            System.out.println(n + " rows, server cpu: " + 10 * (serverCpuTime() - c)
+                    + " ms, total: " + (System.currentTimeMillis() - l) + " ms");
+        }
+    }
+
+    // a cursor returned by a function is read by JDBC
+    @Test
+    public void functionCursorTest() throws SQLException {
+        HashMap<String, Object> args = new HashMap<>();
+        args.put("N", 50000);
+        args.put("L", 0);
+        for (int fs : new int[]{0, 1000}) {
+            ProcedureCaller p = new ProcedureCaller(connection);
+            p.setCursorFetchSize(fs);
+            long l = System.currentTimeMillis();
+            List<?> rows = (List<?>) p.call("p1.fcursor1", args).get("RETURN");
+            assertEquals(50000, rows.size());
+            System.out.println("50000 cursor rows, fetch size " + fs + ": " + (System.currentTimeMillis() - l));
+        }
+    }
+
+    // many calls with wide records, most of the time is spent marshalling
+    // the record fields
+    @Test
+    public void recordMarshallingTest() throws SQLException {
+        recordMarshalling(false);
+    }
+
+    @Test
+    public void recordMarshallingGeneratedTest() throws SQLException {
+        recordMarshalling(true);
+    }
+
+    void recordMarshalling(boolean generate) throws SQLException {
+        createP2(30, 20);
+        HashMap<String, Object> args = p2Args(30, 20);
+        ProcedureCaller p = new ProcedureCaller(connection, true, false);
+        p.setGenerateMarshallers(generate);
+        HashMap<String, Object> dargs = new HashMap<>();
+        for (Map.Entry<String, Object> e : args.entrySet()) {
+            HashMap<String, Object> m = new HashMap<>();
+            for (Map.Entry<String, Object> e2 : ((Map<String, Object>) e.getValue()).entrySet()) {
+                m.put(e2.getKey().toLowerCase(), e2.getValue());
+            }
+            dargs.put(e.getKey().toLowerCase(), m);
+        }
+        p.call("P2.P", dargs);
+        long l = System.currentTimeMillis();
+        for (int i = 0; i < 200; i++) {
+            Map<String, Object> res = p.call("P2.P", dargs);
+            assertEquals(((Map) dargs.get("in0")).get("y7"), ((Map) res.get("out0")).get("y7"));
+        }
+        System.out.println("200 calls with 20 records of 90 fields, generated=" + generate + ": "
+                + (System.currentTimeMillis() - l));
+    }
+
+    @Test
+    public void statementReuseTest() throws SQLException {
+        connection.setExplicitCachingEnabled(true);
+        connection.setStatementCacheSize(50);
+        ProcedureCaller p = new ProcedureCaller(connection);
+        HashMap<String, Object> ar = new HashMap<>();
+        ar.put("XI", 12);
+        ar.put("YI", "x");
+        ar.put("ZI", new Date());
+        long l = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            p.call("P1.P", ar);
+        }
+        System.out.println("100 calls: " + (System.currentTimeMillis() - l) + ", hits="
+                + p.getStatementCacheHits() + ", misses=" + p.getStatementCacheMisses());
+        assertTrue(p.getStatementCacheMisses() <= 1);
+        assertEquals(100, p.getStatementCacheHits() + p.getStatementCacheMisses());
+    }
+
 }
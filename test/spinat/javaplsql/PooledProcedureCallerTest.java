@@ -0,0 +1,108 @@
+package spinat.javaplsql;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import oracle.jdbc.OracleConnection;
+import oracle.jdbc.pool.OracleDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PooledProcedureCallerTest {
+
+    public PooledProcedureCallerTest() {
+    }
+
+    OracleDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        Properties props = TestUtil.getProperties("config1.txt");
+        dataSource = new OracleDataSource();
+        dataSource.setURL(props.getProperty("url"));
+        dataSource.setUser(props.getProperty("user1").toUpperCase());
+        dataSource.setPassword(props.getProperty("pw1"));
+        try (OracleConnection connection = (OracleConnection) dataSource.getConnection()) {
+            HashMap<String, String> a = TestUtil.loadSnippets("snippets.txt");
+
+            Ddl.call(connection, a.get("p1_spec"));
+            Ddl.call(connection, a.get("p1_body"));
+
+            Ddl.createType(connection, "create type number_array as table of number;");
+            Ddl.createType(connection, "create type varchar2_array as table of varchar2(32767);");
+            Ddl.createType(connection, "create type date_array as table of date;");
+            Ddl.createType(connection, "create type raw_array as table of raw(32767);");
+        }
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testManyThreads() throws Exception {
+        final PooledProcedureCaller p = new PooledProcedureCaller(dataSource);
+        p.settings().setGenerateMarshallers(true);
+        ArrayList<Thread> threads = new ArrayList<>();
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int x = i;
+            Thread t = new Thread(() -> {
+                try {
+                    for (int k = 0; k < 20; k++) {
+                        HashMap<String, Object> ar = new HashMap<>();
+                        ar.put("XI", x * 100 + k);
+                        ar.put("YI", "x");
+                        ar.put("ZI", new Date());
+                        Map<String, Object> res = p.call("P1.P", ar);
+                        assertEquals(new BigDecimal(x * 100 + k + 1), res.get("XO"));
+                    }
+                } catch (Throwable ex) {
+                    synchronized (errors) {
+                        errors.add(ex);
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.isEmpty());
+        assertEquals(160, p.getRoundTrips());
+    }
+
+    @Test
+    public void testBatchAndAsync() throws Exception {
+        PooledProcedureCaller p = new PooledProcedureCaller(dataSource);
+        ArrayList<Map<String, Object>> args = new ArrayList<>();
+        ArrayList<CompletableFuture<Map<String, Object>>> fs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> a = new HashMap<>();
+            a.put("X", i);
+            args.add(a);
+            fs.add(p.callAsync("P1.PBATCH", a));
+        }
+        List<ProcedureCaller.BatchResult> res = p.callBatch("P1.PBATCH", args);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(new BigDecimal(2 * i), res.get(i).getValues().get("Y"));
+            assertEquals(new BigDecimal(2 * i), fs.get(i).get().get("Y"));
+        }
+        Object y = p.execute(pc -> {
+            ProcedureCaller.Box<Object> b = new ProcedureCaller.Box<>();
+            pc.callPositional("P1.PBATCH", 5, b);
+            return b.value;
+        });
+        assertEquals(new BigDecimal(10), y);
+    }
+}
@@ -0,0 +1,98 @@
+package spinat.javaplsql;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RowMapTest {
+
+    public RowMapTest() {
+    }
+
+    @Test
+    public void testMapContract() {
+        RowMap.Keys keys = new RowMap.Keys(new String[]{"A", "B", "C"});
+        RowMap r = new RowMap(keys, new Object[]{1, null, "x"});
+        HashMap<String, Object> h = new HashMap<>();
+        h.put("A", 1);
+        h.put("B", null);
+        h.put("C", "x");
+        assertEquals(h, r);
+        assertEquals(r, h);
+        assertEquals(h.hashCode(), r.hashCode());
+        assertEquals(3, r.size());
+        assertTrue(r.containsKey("B"));
+        assertFalse(r.containsKey("D"));
+        assertNull(r.get("B"));
+        assertEquals("x", r.get("C"));
+        assertTrue(r.containsValue("x"));
+        Iterator<String> it = r.keySet().iterator();
+        assertEquals("A", it.next());
+        assertEquals("B", it.next());
+        assertEquals("C", it.next());
+        assertFalse(it.hasNext());
+        try {
+            r.put("A", 2);
+            fail("the map must not be changed");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void testDuplicateNames() {
+        // like a HashMap the last value for a column name wins
+        RowMap.Keys keys = new RowMap.Keys(new String[]{"X", "Y", "X"});
+        assertEquals(2, keys.size());
+        Object[] values = new Object[keys.size()];
+        values[keys.slots[0]] = 1;
+        values[keys.slots[1]] = 2;
+        values[keys.slots[2]] = 3;
+        RowMap r = new RowMap(keys, values);
+        assertEquals(2, r.size());
+        assertEquals(3, r.get("X"));
+    }
+
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // rows of 30 columns, compare the heap used by HashMaps and RowMaps
+    @Test
+    public void testWideRowMemory() {
+        int rows = 20000;
+        int cols = 30;
+        String[] names = new String[cols];
+        Object[] values = new Object[cols];
+        for (int i = 0; i < cols; i++) {
+            names[i] = "COLUMN_" + i;
+            values[i] = new BigDecimal(i);
+        }
+        long m0 = usedMemory();
+        ArrayList<Map<String, Object>> l1 = new ArrayList<>(rows);
+        for (int j = 0; j < rows; j++) {
+            HashMap<String, Object> h = new HashMap<>();
+            for (int i = 0; i < cols; i++) {
+                h.put(names[i], values[i]);
+            }
+            l1.add(h);
+        }
+        long m1 = usedMemory();
+        RowMap.Keys keys = new RowMap.Keys(names);
+        ArrayList<Map<String, Object>> l2 = new ArrayList<>(rows);
+        for (int j = 0; j < rows; j++) {
+            l2.add(new RowMap(keys, values.clone()));
+        }
+        long m2 = usedMemory();
+        System.out.println(rows + " rows of " + cols + " columns, HashMap: " + (m1 - m0) / rows
+                + " bytes/row, RowMap: " + (m2 - m1) / rows + " bytes/row");
+        assertEquals(l1.get(rows - 1), l2.get(rows - 1));
+    }
+}